@@ -0,0 +1,53 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Runs the JMH benchmarks of the jmh package: mappers, validation of the create request and password hashing.
+ * Results are written as JSON to target/benchmarks/jmh.json, to compare runs with a JMH visualizer or jq.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=JmhBenchmark [-Dbenchmark.jmh.include=MapperBench]
+ */
+class JmhBenchmark {
+
+    static final String INCLUDE = System.getProperty("benchmark.jmh.include", JmhBenchmark.class.getPackageName() + ".jmh.");
+
+    @Test
+    void microbenchmarks() throws Exception {
+        Path result = Path.of("target", "benchmarks", "jmh.json");
+        Files.createDirectories(result.getParent());
+
+        Options options = new OptionsBuilder()
+                .include(INCLUDE)
+                .forks(1)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        BenchmarkReport report = new BenchmarkReport("jmh", "JMH average time per operation, one fork, JSON results in " + result);
+        for (RunResult runResult : results) {
+            String params = runResult.getParams().getParamsKeys().stream()
+                    .map(key -> key + "=" + runResult.getParams().getParam(key))
+                    .reduce("", (a, b) -> a + " " + b);
+            report.line(String.format("%-60s %14.3f ± %10.3f %s",
+                    runResult.getParams().getBenchmark().replace(JmhBenchmark.class.getPackageName() + ".jmh.", "") + params,
+                    runResult.getPrimaryResult().getScore(),
+                    runResult.getPrimaryResult().getScoreError(),
+                    runResult.getPrimaryResult().getScoreUnit()));
+        }
+        report.write();
+    }
+}
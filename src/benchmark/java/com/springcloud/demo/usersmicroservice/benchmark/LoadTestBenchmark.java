@@ -0,0 +1,301 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import com.springcloud.demo.usersmicroservice.benchmark.support.OpenLoadGenerator;
+import com.springcloud.demo.usersmicroservice.benchmark.support.OpenLoadGenerator.Operation;
+import com.springcloud.demo.usersmicroservice.benchmark.support.OpenLoadGenerator.Result;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Latency of every endpoint of UserController and UserRoleController under a fixed arrival rate (open model),
+ * against the application booted with the H2 test profile or an embedded PostgreSQL.
+ * <p>
+ * Requests are split between reads (by id, list and search), auth lookups by email and writes (create, update, delete,
+ * add and delete role) by -Dbenchmark.mix. Latency is corrected for coordinated omission, see {@link OpenLoadGenerator}.
+ * The percentile distribution of each endpoint is written to target/benchmarks/load-test/{endpoint}.hgrm.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=LoadTestBenchmark [-Dbenchmark.database=h2] [-Dbenchmark.rate=50]
+ * [-Dbenchmark.mix=read=70,auth=20,write=10] [-Dbenchmark.users=10000]
+ */
+class LoadTestBenchmark {
+
+    static final String DATABASE = System.getProperty("benchmark.database", "postgres");
+    static final int USERS = Integer.getInteger("benchmark.users", 10_000);
+    static final double RATE = Double.parseDouble(System.getProperty("benchmark.rate", "50"));
+    static final String MIX = System.getProperty("benchmark.mix", "read=70,auth=20,write=10");
+    static final Duration WARMUP = Duration.ofSeconds(Long.getLong("benchmark.warmup", 10));
+    static final Duration DURATION = Duration.ofSeconds(Long.getLong("benchmark.duration", 30));
+
+    static final String PASSWORD = "Abcd1234.";
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    final Random random = new Random(42);
+    final AtomicLong sequence = new AtomicLong();
+
+    final List<UUID> userIds = new ArrayList<>();
+    final List<String> emails = new ArrayList<>();
+    /** seeded users with CUSTOMER role only, taken by add role */
+    final Queue<UUID> customers = new ConcurrentLinkedQueue<>();
+    /** user id and role id added by add role, taken by delete role */
+    final Queue<UUID[]> addedRoles = new ConcurrentLinkedQueue<>();
+    /** users created by the load, taken by delete */
+    final Queue<UUID> createdUsers = new ConcurrentLinkedQueue<>();
+
+    HttpClient client;
+    String baseUrl;
+
+    @Test
+    void endpointsLatency() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("load-test", String.format(
+                "%s, %,d users, %.0f req/s open model (%s), %ds after %ds warmup, latency from intended start",
+                DATABASE, USERS, RATE, MIX, DURATION.toSeconds(), WARMUP.toSeconds()));
+
+        EmbeddedPostgres postgres = DATABASE.equals("postgres") ? BenchmarkDatabase.start() : null;
+
+        try (ConfigurableApplicationContext app = start(postgres)) {
+            seed(app);
+
+            baseUrl = "http://localhost:" + app.getEnvironment().getRequiredProperty("local.server.port") + "/api/users";
+            client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+
+            Map<String, Result> results = new OpenLoadGenerator(RATE, WARMUP, DURATION).run(mix());
+
+            Path directory = Path.of("target", "benchmarks", "load-test");
+            Files.createDirectories(directory);
+
+            new TreeMap<>(results).forEach((endpoint, result) -> {
+                report.latency(endpoint, result.latency());
+                report.latency("  service time", result.serviceTime());
+                report.line(String.format("  %.1f req/s, errors=%d", result.latency().getTotalCount() / (double) DURATION.toSeconds(), result.errors()));
+
+                try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(endpoint.replaceAll("[^A-Za-z]+", "-").replaceAll("^-|-$", "") + ".hgrm")))) {
+                    // recorded in microseconds, distribution in milliseconds
+                    result.latency().outputPercentileDistribution(out, 1000.0);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            client.close();
+        } finally {
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+
+        report.write();
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--users.tracing.sampling-rate=0"
+        ));
+
+        if (postgres != null) {
+            args.add("--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"));
+            args.add("--spring.datasource.username=postgres");
+            args.add("--spring.datasource.password=postgres");
+        } else {
+            args.add("--spring.profiles.active=test");
+            args.add("--spring.jpa.properties.hibernate.generate_statistics=false");
+        }
+
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Users with CUSTOMER role, every other one also OWNER
+     */
+    private void seed(ConfigurableApplicationContext app) {
+        UserRepository userRepository = app.getBean(UserRepository.class);
+        TransactionTemplate transactionTemplate = app.getBean(TransactionTemplate.class);
+
+        for (int batch = 0; batch < USERS; batch += 1_000) {
+            List<User> users = new ArrayList<>();
+            for (int i = batch; i < Math.min(USERS, batch + 1_000); i++) {
+                User user = new User(null, "User " + i, "user" + i + "@example.com", "encrypted_password", null, null, null, new ArrayList<>());
+                user.getRoles().add(new UserRole(null, Roles.CUSTOMER.name(), null, user));
+                if (i % 2 == 1) {
+                    user.getRoles().add(new UserRole(null, Roles.OWNER.name(), null, user));
+                }
+                users.add(user);
+            }
+
+            transactionTemplate.executeWithoutResult(status -> userRepository.saveAll(users));
+
+            for (User user : users) {
+                userIds.add(user.getId());
+                emails.add(user.getEmail());
+                if (user.getRoles().size() == 1) {
+                    customers.add(user.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Category picked by the weights of -Dbenchmark.mix, then an endpoint of the category
+     */
+    private Supplier<Operation> mix() {
+        Map<String, Integer> weights = Arrays.stream(MIX.split(","))
+                .map(entry -> entry.split("="))
+                .collect(Collectors.toMap(entry -> entry[0].trim(), entry -> Integer.parseInt(entry[1].trim()), Integer::sum, LinkedHashMap::new));
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+
+        return () -> {
+            int pick = random.nextInt(total);
+            for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+                pick -= weight.getValue();
+                if (pick < 0) {
+                    return switch (weight.getKey()) {
+                        case "read" -> read();
+                        case "auth" -> auth();
+                        case "write" -> write();
+                        default -> throw new IllegalArgumentException("Unknown mix category " + weight.getKey());
+                    };
+                }
+            }
+            throw new IllegalStateException();
+        };
+    }
+
+    private Operation read() {
+        int pick = random.nextInt(4);
+        if (pick < 2) {
+            UUID id = randomUser();
+            return new Operation("GET /{id}", () -> send(get("/" + id), 200) != null);
+        }
+        if (pick == 2) {
+            return new Operation("GET ?limit=20", () -> send(get("?limit=20"), 200) != null);
+        }
+        String term = URLEncoder.encode("User " + random.nextInt(USERS), StandardCharsets.UTF_8);
+        return new Operation("GET ?q=&limit=20", () -> send(get("?limit=20&q=" + term), 200) != null);
+    }
+
+    private Operation auth() {
+        String email = emails.get(random.nextInt(emails.size()));
+        return new Operation("GET /email/{email}", () -> send(get("/email/" + email), 200) != null);
+    }
+
+    /**
+     * Writes that need a user or role created before fall back to create when there is none
+     */
+    private Operation write() {
+        int pick = random.nextInt(10);
+
+        if (pick < 2) {
+            UUID userId = createdUsers.poll();
+            if (userId != null) {
+                return new Operation("DELETE /{id}", () -> send(request("/" + userId, userId).DELETE(), 200) != null);
+            }
+        } else if (pick < 4) {
+            UUID userId = customers.poll();
+            if (userId != null) {
+                return new Operation("POST /{id}/roles", () -> {
+                    String body = send(request("/" + userId + "/roles", userId).POST(json(Map.of("role", Roles.OWNER.name()))), 201);
+                    if (body == null) {
+                        return false;
+                    }
+                    addedRoles.add(new UUID[]{userId, UUID.fromString(objectMapper.readTree(body).get("id").asText())});
+                    return true;
+                });
+            }
+        } else if (pick < 5) {
+            UUID[] role = addedRoles.poll();
+            if (role != null) {
+                return new Operation("DELETE /roles/{id}", () -> {
+                    boolean ok = send(request("/roles/" + role[1], role[0]).DELETE(), 200) != null;
+                    customers.add(role[0]);
+                    return ok;
+                });
+            }
+        } else if (pick < 7) {
+            UUID userId = randomUser();
+            return new Operation("PATCH /{id}", () -> send(request("/" + userId, userId)
+                    .method("PATCH", json(Map.of("name", "Updated " + sequence.incrementAndGet()))), 200) != null);
+        }
+
+        long n = sequence.incrementAndGet();
+        return new Operation("POST /", () -> {
+            String body = send(request("", null).POST(json(Map.of(
+                    "name", "Load " + n,
+                    "email", "load" + n + "-" + UUID.randomUUID() + "@example.com",
+                    "password", PASSWORD
+            ))), 201);
+            if (body == null) {
+                return false;
+            }
+            createdUsers.add(UUID.fromString(objectMapper.readTree(body).get("id").asText()));
+            return true;
+        });
+    }
+
+    private UUID randomUser() {
+        return userIds.get(random.nextInt(userIds.size()));
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return request(path, null).GET();
+    }
+
+    private HttpRequest.Builder request(String path, UUID userLogged) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json");
+        if (userLogged != null) {
+            builder.header("X-UserId", userLogged.toString());
+        }
+        return builder;
+    }
+
+    private HttpRequest.BodyPublisher json(Map<String, String> body) throws Exception {
+        return HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body));
+    }
+
+    /**
+     * @return body of the response, null when the status is not the expected one
+     */
+    private String send(HttpRequest.Builder request, int expectedStatus) throws Exception {
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == expectedStatus ? response.body() : null;
+    }
+}
@@ -0,0 +1,130 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.amazonaws.xray.jakarta.servlet.AWSXRayServletFilter;
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Cost of tracing per request at 0%, 5% and 100% sampling, alternating GET /api/users/{id} and GET /api/users.
+ * Reports CPU of the whole process (so includes the emitter thread), bytes allocated by the request thread
+ * and latency. The last run records every SQL statement of sampled requests, as the X-Ray TracingDataSource did.
+ * <p>
+ * No X-Ray daemon is running, segments are still serialized and sent over UDP to 127.0.0.1:2000.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=TracingOverheadBenchmark
+ */
+class TracingOverheadBenchmark {
+
+    static final int USERS = Integer.getInteger("benchmark.users", 10_000);
+    static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 5_000);
+    static final int WARMUP = 3_000;
+
+    @Test
+    void overheadPerRequest() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("tracing-overhead", "Tracing cost per request, " + USERS + " users, average of " + ITERATIONS + " requests");
+
+        try (EmbeddedPostgres postgres = BenchmarkDatabase.start()) {
+            DataSource dataSource = postgres.getPostgresDatabase();
+            BenchmarkDatabase.migrate(dataSource, "latest");
+            BenchmarkDatabase.seedUsers(dataSource, USERS);
+            List<UUID> ids = userIds(dataSource);
+
+            // First round only warms up the JVM shared by the four applications
+            for (int round = 0; round < 2; round++) {
+                List<String> lines = List.of(
+                        measure(postgres, ids, "0% sampled", "0", "10ms"),
+                        measure(postgres, ids, "5% sampled", "0.05", "10ms"),
+                        measure(postgres, ids, "100% sampled", "1", "10ms"),
+                        measure(postgres, ids, "100% sampled, every statement", "1", "0ms")
+                );
+                if (round == 1) {
+                    lines.forEach(report::line);
+                }
+            }
+        }
+
+        report.write();
+    }
+
+    private String measure(EmbeddedPostgres postgres, List<UUID> ids, String label, String samplingRate, String slowSqlThreshold) throws Exception {
+        try (ConfigurableApplicationContext app = start(postgres, samplingRate, slowSqlThreshold)) {
+            MockMvc mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) app)
+                    .addFilters(app.getBean(AWSXRayServletFilter.class))
+                    .build();
+
+            for (int i = 0; i < WARMUP; i++) {
+                request(mockMvc, ids, i);
+            }
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long thread = Thread.currentThread().threadId();
+            Histogram latency = new Histogram(3);
+
+            long startCpu = os.getProcessCpuTime();
+            long startAllocated = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                request(mockMvc, ids, i);
+                latency.recordValue((System.nanoTime() - start) / 1_000);
+            }
+            long cpu = (os.getProcessCpuTime() - startCpu) / ITERATIONS;
+            long allocated = (threads.getThreadAllocatedBytes(thread) - startAllocated) / ITERATIONS;
+
+            return String.format("%-32s cpu=%,7d us  allocated=%,9d B  p50=%6.2fms  p99=%6.2fms",
+                    label, cpu / 1_000, allocated, latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0);
+        }
+    }
+
+    private void request(MockMvc mockMvc, List<UUID> ids, int i) throws Exception {
+        String path = i % 2 == 0 ? "/api/users/" + ids.get(i % ids.size()) : "/api/users?limit=20";
+        mockMvc.perform(MockMvcRequestBuilders.get(path)).andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres, String samplingRate, String slowSqlThreshold) {
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--users.auth-cache.enabled=false",
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--users.tracing.sampling-rate=" + samplingRate,
+                "--users.tracing.slow-sql-threshold=" + slowSqlThreshold
+        );
+    }
+
+    private List<UUID> userIds(DataSource dataSource) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id FROM users ORDER BY random() LIMIT 10000")) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getObject(1, UUID.class));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,115 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Time and heap of GET /api/users/export over -Dbenchmark.users users on an embedded PostgreSQL.
+ * <p>
+ * The application runs in this JVM, the heap is sampled while the export is read so the peak above the heap used
+ * before the request shows whether rows are streamed (flat with the users) or read at once (-Dbenchmark.fetch-size=0).
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=UserExportBenchmark [-Dbenchmark.users=200000] [-Dbenchmark.fetch-size=1000]
+ * [-Dbenchmark.format=application/x-ndjson|text/csv] [-Dbenchmark.gzip=false]
+ */
+class UserExportBenchmark {
+
+    static final int USERS = Integer.getInteger("benchmark.users", 200_000);
+    static final int FETCH_SIZE = Integer.getInteger("benchmark.fetch-size", 1000);
+    static final String FORMAT = System.getProperty("benchmark.format", "application/x-ndjson");
+    static final boolean GZIP = Boolean.getBoolean("benchmark.gzip");
+
+    @Test
+    void exportTimeAndHeap() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("user-export", String.format(
+                "postgres, %,d users, fetch size %d, %s%s", USERS, FETCH_SIZE, FORMAT, GZIP ? ", gzip" : ""));
+
+        try (EmbeddedPostgres postgres = BenchmarkDatabase.start();
+             ConfigurableApplicationContext app = start(postgres);
+             HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            DataSource dataSource = app.getBean(DataSource.class);
+            BenchmarkDatabase.seedUsers(dataSource, USERS);
+            BenchmarkDatabase.analyze(dataSource);
+
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + app.getEnvironment().getRequiredProperty("local.server.port") + "/api/users/export"))
+                    .header("Accept", FORMAT);
+            if (GZIP) {
+                request.header("Accept-Encoding", "gzip");
+            }
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong heapPeak = new AtomicLong(heapBefore);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+                while (running.get()) {
+                    heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            long bytes = 0;
+            long lines = 0;
+            try (InputStream body = GZIP ? new GZIPInputStream(response.body()) : response.body()) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    bytes += read;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            lines++;
+                        }
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            sampler.join();
+
+            report.line(String.format("status %d, %,d lines, %,.1f MB uncompressed in %.1fs, %,.0f users/s",
+                    response.statusCode(), lines, bytes / 1e6, seconds, USERS / seconds));
+            report.line(String.format("heap peak %,.1f MB above the %,.1f MB used before the request",
+                    (heapPeak.get() - heapBefore) / 1e6, heapBefore / 1e6));
+        }
+
+        report.write();
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres) {
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--users.tracing.sampling-rate=0",
+                "--users.export.fetch-size=" + FETCH_SIZE,
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres"
+        );
+    }
+}
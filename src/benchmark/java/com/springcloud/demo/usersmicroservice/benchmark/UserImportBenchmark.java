@@ -0,0 +1,143 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of POST /api/users/import with -Dbenchmark.users users generated while the request body is sent,
+ * so neither side holds the whole import in memory.
+ * <p>
+ * The time of the hashing and database phases is reported apart: with the default bcrypt strength hashing takes
+ * about 80ms of CPU per user, so throughput is bound by the cores given to the hasher pool (-Dbenchmark.hash-threads).
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=UserImportBenchmark [-Dbenchmark.database=h2] [-Dbenchmark.users=2000]
+ * [-Dbenchmark.batch-size=500] [-Dbenchmark.hash-threads=2]
+ */
+class UserImportBenchmark {
+
+    static final String DATABASE = System.getProperty("benchmark.database", "postgres");
+    static final int USERS = Integer.getInteger("benchmark.users", 2_000);
+    static final int BATCH_SIZE = Integer.getInteger("benchmark.batch-size", 500);
+    static final int HASH_THREADS = Integer.getInteger("benchmark.hash-threads", Runtime.getRuntime().availableProcessors());
+
+    static final Pattern STATUS = Pattern.compile("\"status\":(\\d+)");
+
+    @Test
+    void importThroughput() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("user-import", String.format(
+                "%s, %,d users, batches of %d, %d hash threads", DATABASE, USERS, BATCH_SIZE, HASH_THREADS));
+
+        EmbeddedPostgres postgres = DATABASE.equals("postgres") ? BenchmarkDatabase.start() : null;
+
+        try (ConfigurableApplicationContext app = start(postgres);
+             HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            String url = "http://localhost:" + app.getEnvironment().getRequiredProperty("local.server.port") + "/api/users/import";
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/x-ndjson")
+                    .timeout(Duration.ofMinutes(30))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(UserImportBenchmark::body))
+                    .build();
+
+            long start = System.nanoTime();
+            Map<String, Long> statuses = client.send(request, HttpResponse.BodyHandlers.ofLines())
+                    .body()
+                    .map(line -> {
+                        Matcher matcher = STATUS.matcher(line);
+                        return matcher.find() ? matcher.group(1) : "unknown";
+                    })
+                    .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            report.line(String.format("%.1fs, %,.0f users/min, results by status %s", seconds, statuses.getOrDefault("201", 0L) / seconds * 60, statuses));
+
+            MeterRegistry meterRegistry = app.getBean(MeterRegistry.class);
+            for (String phase : List.of("hashing", "db")) {
+                Timer timer = meterRegistry.find(ServiceMetrics.PHASE_TIMER).tag("operation", "import").tag("phase", phase).timer();
+                if (timer != null) {
+                    report.line(String.format("  %-8s %,d batches, %.1fs total, %.1fms per user",
+                            phase, timer.count(), timer.totalTime(TimeUnit.SECONDS), timer.totalTime(TimeUnit.MILLISECONDS) / USERS));
+                }
+            }
+        } finally {
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+
+        report.write();
+    }
+
+    /**
+     * One line per user, generated as the client reads it
+     */
+    private static InputStream body() {
+        Enumeration<InputStream> lines = new Enumeration<>() {
+            int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < USERS;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                int i = next++;
+                String line = "{\"name\":\"User " + i + "\",\"email\":\"import" + i + "@example.com\",\"password\":\"Abcd1234.\"}\n";
+                return new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        return new SequenceInputStream(lines);
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--users.tracing.sampling-rate=0",
+                "--users.import.batch-size=" + BATCH_SIZE,
+                "--users.password-hashing.threads=" + HASH_THREADS
+        ));
+
+        if (postgres != null) {
+            args.add("--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"));
+            args.add("--spring.datasource.username=postgres");
+            args.add("--spring.datasource.password=postgres");
+        } else {
+            args.add("--spring.profiles.active=test");
+            args.add("--spring.jpa.properties.hibernate.generate_statistics=false");
+        }
+
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(args.toArray(String[]::new));
+    }
+}
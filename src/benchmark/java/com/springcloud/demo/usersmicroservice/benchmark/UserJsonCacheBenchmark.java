@@ -0,0 +1,159 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and CPU per request of GET /api/users/{id} over -Dbenchmark.hot-users users, with the responses
+ * serialized by Jackson on each request and written from the JSON cache.
+ * <p>
+ * Both runs serve the users from the second level cache, so the difference is the mapping and serialization saved.
+ * CPU is the time of this whole JVM, clients and application, divided by the requests answered.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=UserJsonCacheBenchmark [-Dbenchmark.hot-users=1000] [-Dbenchmark.connections=64]
+ */
+class UserJsonCacheBenchmark {
+
+    static final int HOT_USERS = Integer.getInteger("benchmark.hot-users", 1_000);
+    static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 64);
+    static final Duration WARMUP = Duration.ofSeconds(Long.getLong("benchmark.warmup", 10));
+    static final Duration DURATION = Duration.ofSeconds(Long.getLong("benchmark.duration", 30));
+
+    static {
+        // Tracing is not under test, avoid logging a missing segment on every statement
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @Test
+    void serializedVersusCachedJson() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("user-json-cache", String.format(
+                "GET /api/users/{id} over %,d hot users, %d concurrent connections, %ds after %ds warmup, %d cores",
+                HOT_USERS, CONNECTIONS, DURATION.toSeconds(), WARMUP.toSeconds(), Runtime.getRuntime().availableProcessors()));
+
+        try (EmbeddedPostgres postgres = BenchmarkDatabase.start()) {
+            DataSource dataSource = postgres.getPostgresDatabase();
+            BenchmarkDatabase.migrate(dataSource, "latest");
+            BenchmarkDatabase.seedUsers(dataSource, HOT_USERS);
+            List<UUID> ids = userIds(dataSource);
+
+            for (boolean jsonCache : List.of(false, true)) {
+                try (ConfigurableApplicationContext app = start(postgres, jsonCache)) {
+                    Result result = load(app.getEnvironment().getRequiredProperty("local.server.port", Integer.class), ids);
+
+                    report.latency(String.format("%-18s %,8.0f req/s, %6.1f µs CPU per request",
+                            jsonCache ? "json cache" : "jackson", result.throughput(), result.cpuPerRequestMicros()), result.latency());
+                    report.line(String.format("  errors=%d", result.errors()));
+                }
+            }
+        }
+
+        report.write();
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres, boolean jsonCache) {
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--users.tracing.sampling-rate=0",
+                "--users.json-cache.enabled=" + jsonCache,
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres"
+        );
+    }
+
+    private Result load(int port, List<UUID> ids) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        Recorder recorder = new Recorder(3);
+        AtomicLong errors = new AtomicLong();
+        AtomicLong cpuAtWarmupEnd = new AtomicLong();
+        long warmupEnd = System.nanoTime() + WARMUP.toNanos();
+        long end = warmupEnd + DURATION.toNanos();
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            workers.submit(() -> {
+                Thread.sleep(WARMUP);
+                cpuAtWarmupEnd.set(os.getProcessCpuTime());
+                return null;
+            });
+
+            for (int i = 0; i < CONNECTIONS; i++) {
+                workers.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        UUID id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/users/" + id))
+                                .timeout(Duration.ofSeconds(30))
+                                .build();
+
+                        long start = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                        } catch (Exception e) {
+                            ok = false;
+                        }
+                        long finished = System.nanoTime();
+
+                        if (start >= warmupEnd && finished <= end) {
+                            if (ok) {
+                                recorder.recordValue((finished - start) / 1_000);
+                            } else {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        long cpu = os.getProcessCpuTime() - cpuAtWarmupEnd.get();
+
+        client.close();
+
+        Histogram latency = recorder.getIntervalHistogram();
+        return new Result(latency, errors.get(), latency.getTotalCount() / (double) DURATION.toSeconds(), cpu / 1_000.0 / Math.max(1, latency.getTotalCount()));
+    }
+
+    private List<UUID> userIds(DataSource dataSource) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id FROM users")) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getObject(1, UUID.class));
+            }
+        }
+        return ids;
+    }
+
+    record Result(Histogram latency, long errors, double throughput, double cpuPerRequestMicros) {
+    }
+}
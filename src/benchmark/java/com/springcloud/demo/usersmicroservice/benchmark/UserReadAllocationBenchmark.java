@@ -0,0 +1,138 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import com.springcloud.demo.usersmicroservice.users.cache.UserAuthCache;
+import com.springcloud.demo.usersmicroservice.users.dto.UserFiltersDTO;
+import com.springcloud.demo.usersmicroservice.users.mapper.UserMapper;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import com.springcloud.demo.usersmicroservice.users.service.UserService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+/**
+ * Heap allocated per call on the read paths, entities mapped with UserMapper (previous implementation)
+ * against the projections queries. Every call runs inside a transaction, sharing the entity manager
+ * as open-in-view does on a request, so lazy roles of the previous implementation can be loaded.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=UserReadAllocationBenchmark
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "users.auth-cache.enabled=false"
+})
+class UserReadAllocationBenchmark {
+
+    static final int USERS = Integer.getInteger("benchmark.users", 10_000);
+    static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 2_000);
+    static final int WARMUP = 2_000;
+
+    static EmbeddedPostgres postgres;
+
+    static {
+        // Tracing is not under test, avoid logging a missing segment on every statement
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) throws IOException {
+        postgres = BenchmarkDatabase.start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        postgres.close();
+    }
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserAuthCache userAuthCache;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    void allocationPerRequest() throws Exception {
+        BenchmarkDatabase.seedUsers(dataSource, USERS);
+
+        UUID id = userRepository.findAll().getFirst().getId();
+        String idValue = id.toString();
+        String email = "user" + (USERS / 2) + "@example.com";
+
+        BenchmarkReport report = new BenchmarkReport("user-read-allocation", "Bytes allocated per call, " + USERS + " users, average of " + ITERATIONS + " calls");
+
+        report.line(row("findById", inTransaction(() -> userRepository.findById(id).map(UserMapper::userToUserResponseDto).orElseThrow()),
+                inTransaction(() -> userService.findById(idValue))));
+
+        report.line(row("findAll (20 users)", inTransaction(() -> entityManager
+                        .createQuery("SELECT u FROM User u ORDER BY u.createdAt, u.id", User.class)
+                        .setMaxResults(20)
+                        .getResultList()
+                        .stream()
+                        .map(UserMapper::userToUserResponseDto)
+                        .toList()),
+                inTransaction(() -> userService.findAll(new UserFiltersDTO(null, null, null, null, null)))));
+
+        report.line(row("findByEmailToAuth (cache disabled)", inTransaction(() -> entityManager
+                        .createQuery("SELECT u FROM User u LEFT JOIN FETCH u.roles WHERE lower(u.email) = lower(?1)", User.class)
+                        .setParameter(1, email)
+                        .getResultList()
+                        .stream()
+                        .map(UserMapper::userToUserAuthResponseDto)
+                        .toList()),
+                inTransaction(() -> userAuthCache.get(email))));
+
+        report.write();
+    }
+
+    private long inTransaction(Runnable call) {
+        return allocation(() -> transactionTemplate.executeWithoutResult(status -> call.run()));
+    }
+
+    private long allocation(Runnable call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - start) / ITERATIONS;
+    }
+
+    private String row(String label, long entityBytes, long projectionBytes) {
+        return String.format("%-36s entities=%,9d B  projections=%,9d B  (%.0f%% less)",
+                label, entityBytes, projectionBytes, 100.0 * (entityBytes - projectionBytes) / entityBytes);
+    }
+}
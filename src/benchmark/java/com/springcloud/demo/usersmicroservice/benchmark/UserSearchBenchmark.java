@@ -0,0 +1,95 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Latency of the user search query (findBySearchTerm) before and after the pg_trgm indexes
+ * created in V6, against an embedded PostgreSQL seeded with -Dbenchmark.users users (1M by default).
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=UserSearchBenchmark
+ */
+class UserSearchBenchmark {
+
+    static final int USERS = Integer.getInteger("benchmark.users", 1_000_000);
+    static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 200);
+    static final int WARMUP = 20;
+
+    /**
+     * Query before V6: email branch without trailing wildcard
+     */
+    static final String PREVIOUS_SEARCH = "SELECT id, name, email FROM users " +
+            "WHERE name ILIKE ? OR email ILIKE ? " +
+            "ORDER BY created_at, id LIMIT 20";
+
+    static final String SEARCH = "SELECT id, name, email FROM users " +
+            "WHERE name ILIKE ? ESCAPE '\\' OR email ILIKE ? ESCAPE '\\' " +
+            "ORDER BY created_at, id LIMIT 20";
+
+    @Test
+    void searchLatency() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("user-search", "Search over " + USERS + " users, " + ITERATIONS + " random terms per query");
+
+        try (EmbeddedPostgres postgres = BenchmarkDatabase.start()) {
+            DataSource dataSource = postgres.getPostgresDatabase();
+
+            BenchmarkDatabase.migrate(dataSource, "5");
+            BenchmarkDatabase.seedUsers(dataSource, USERS);
+
+            report.latency("previous query, without trigram indexes", measure(dataSource, PREVIOUS_SEARCH, term -> "%" + term));
+            report.latency("current query, without trigram indexes", measure(dataSource, SEARCH, term -> "%" + term + "%"));
+
+            BenchmarkDatabase.migrate(dataSource, "latest");
+            BenchmarkDatabase.analyze(dataSource);
+
+            report.latency("current query, with trigram indexes (V6)", measure(dataSource, SEARCH, term -> "%" + term + "%"));
+            report.latency("  + plan_cache_mode=force_custom_plan", measure(customPlans(postgres), SEARCH, term -> "%" + term + "%"));
+        }
+
+        report.write();
+    }
+
+    private Histogram measure(DataSource dataSource, String sql, Function<String, String> emailPattern) throws SQLException {
+        Histogram histogram = new Histogram(3);
+        Random random = new Random(42);
+
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                String term = String.valueOf(1_000 + random.nextInt(USERS - 1_000));
+                statement.setString(1, "%" + term + "%");
+                statement.setString(2, emailPattern.apply(term));
+
+                long start = System.nanoTime();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        resultSet.getString(3);
+                    }
+                }
+                if (i >= WARMUP) {
+                    histogram.recordValue((System.nanoTime() - start) / 1_000);
+                }
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Custom plans for the whole connection, the search transaction of the service sets them locally
+     */
+    private DataSource customPlans(EmbeddedPostgres postgres) {
+        return postgres.getDatabase("postgres", "postgres", Map.of("options", "-c plan_cache_mode=force_custom_plan"));
+    }
+}
@@ -0,0 +1,179 @@
+package com.springcloud.demo.usersmicroservice.benchmark;
+
+import com.springcloud.demo.usersmicroservice.UsersMicroserviceApplication;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkDatabase;
+import com.springcloud.demo.usersmicroservice.benchmark.support.BenchmarkReport;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency of GET /api/users/{id} with the servlet stack on platform threads and on virtual threads,
+ * with -Dbenchmark.connections clients (1k by default) each keeping one request in flight.
+ * Virtual thread pinning is recorded with JFR during the virtual threads run.
+ * <p>
+ * Run with: mvn -Pbenchmark test -Dtest=VirtualThreadsLoadBenchmark
+ */
+class VirtualThreadsLoadBenchmark {
+
+    static final int USERS = Integer.getInteger("benchmark.users", 100_000);
+    static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 1_000);
+    static final Duration WARMUP = Duration.ofSeconds(Long.getLong("benchmark.warmup", 10));
+    static final Duration DURATION = Duration.ofSeconds(Long.getLong("benchmark.duration", 30));
+
+    static {
+        // Tracing is not under test, avoid logging a missing segment on every statement
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("virtual-threads-load", "GET /api/users/{id}, " + CONNECTIONS + " concurrent connections, "
+                + DURATION.toSeconds() + "s after " + WARMUP.toSeconds() + "s warmup, " + Runtime.getRuntime().availableProcessors() + " cores shared by clients, app and database");
+
+        try (EmbeddedPostgres postgres = BenchmarkDatabase.start()) {
+            DataSource dataSource = postgres.getPostgresDatabase();
+            BenchmarkDatabase.migrate(dataSource, "latest");
+            BenchmarkDatabase.seedUsers(dataSource, USERS);
+            List<UUID> ids = userIds(dataSource);
+
+            for (boolean virtualThreads : List.of(false, true)) {
+                Map<String, LongAdder> pinned = new ConcurrentHashMap<>();
+
+                try (ConfigurableApplicationContext app = start(postgres, virtualThreads);
+                     RecordingStream pinning = new RecordingStream()) {
+                    pinning.enable("jdk.VirtualThreadPinned").withStackTrace().withThreshold(Duration.ZERO);
+                    pinning.onEvent("jdk.VirtualThreadPinned", event -> pinned
+                            .computeIfAbsent(applicationFrame(event.getStackTrace().getFrames()), frame -> new LongAdder())
+                            .increment());
+                    pinning.startAsync();
+
+                    int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                    Result result = load(port, ids);
+
+                    report.latency((virtualThreads ? "virtual threads" : "platform threads") + String.format(" %,8.0f req/s", result.throughput()), result.latency());
+                    report.line(String.format("  errors=%d", result.errors()));
+                    if (virtualThreads) {
+                        report.line("  pinned events=" + pinned.values().stream().mapToLong(LongAdder::sum).sum());
+                        pinned.forEach((frame, count) -> report.line("    " + count.sum() + " at " + frame));
+                    }
+                }
+            }
+        }
+
+        report.write();
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres, boolean virtualThreads) {
+        return new SpringApplicationBuilder(UsersMicroserviceApplication.class).run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--eureka.client.enabled=false",
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--spring.threads.virtual.enabled=" + virtualThreads
+        );
+    }
+
+    private Result load(int port, List<UUID> ids) throws InterruptedException {
+        // Several clients so the selector thread of one client is not the bottleneck
+        List<HttpClient> clients = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, CONNECTIONS / 100); i++) {
+            clients.add(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build());
+        }
+
+        Recorder recorder = new Recorder(3);
+        AtomicLong errors = new AtomicLong();
+        long warmupEnd = System.nanoTime() + WARMUP.toNanos();
+        long end = warmupEnd + DURATION.toNanos();
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                HttpClient client = clients.get(i % clients.size());
+                workers.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        UUID id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/users/" + id))
+                                .timeout(Duration.ofSeconds(30))
+                                .build();
+
+                        long start = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                        } catch (Exception e) {
+                            ok = false;
+                        }
+                        long finished = System.nanoTime();
+
+                        if (start >= warmupEnd && finished <= end) {
+                            if (ok) {
+                                recorder.recordValue((finished - start) / 1_000);
+                            } else {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        clients.forEach(HttpClient::close);
+
+        Histogram latency = recorder.getIntervalHistogram();
+        return new Result(latency, errors.get(), latency.getTotalCount() / (double) DURATION.toSeconds());
+    }
+
+    private List<UUID> userIds(DataSource dataSource) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id FROM users ORDER BY random() LIMIT 10000")) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getObject(1, UUID.class));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * First frame of the stack outside the JDK, to group pinned events by the code holding the monitor
+     */
+    private static String applicationFrame(List<RecordedFrame> frames) {
+        return frames.stream()
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+                .filter(method -> !method.startsWith("java.") && !method.startsWith("jdk.") && !method.startsWith("sun."))
+                .findFirst()
+                .orElse(frames.isEmpty() ? "unknown" : frames.getFirst().getMethod().getType().getName());
+    }
+
+    record Result(Histogram latency, long errors, double throughput) {
+    }
+}
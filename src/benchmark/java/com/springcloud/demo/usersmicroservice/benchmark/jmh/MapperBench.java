@@ -0,0 +1,78 @@
+package com.springcloud.demo.usersmicroservice.benchmark.jmh;
+
+import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
+import com.springcloud.demo.usersmicroservice.userroles.mapper.UserRoleMapper;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.mapper.UserMapper;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of a user with two roles, and parsing of the role sent on create and add role requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MapperBench {
+
+    User user;
+
+    @Setup
+    public void setup() {
+        UserRole customer = new UserRole(UUID.randomUUID(), Roles.CUSTOMER.name(), LocalDateTime.now(), null);
+        UserRole owner = new UserRole(UUID.randomUUID(), Roles.OWNER.name(), LocalDateTime.now(), null);
+        user = new User(UUID.randomUUID(), "User1", "user1@gmail.com", "$2a$10$encrypted_password", LocalDateTime.now(), LocalDateTime.now(), null, List.of(customer, owner));
+        customer.setUser(user);
+        owner.setUser(user);
+    }
+
+    @Benchmark
+    public UserResponseDTO userToUserResponseDto() {
+        return UserMapper.userToUserResponseDto(user);
+    }
+
+    @Benchmark
+    public UserAuthResponseDTO userToUserAuthResponseDto() {
+        return UserMapper.userToUserAuthResponseDto(user);
+    }
+
+    @Benchmark
+    public UserRole stringToUserRoleDefault() {
+        return UserRoleMapper.stringToUserRole(null);
+    }
+
+    @Benchmark
+    public UserRole stringToUserRoleValid() {
+        return UserRoleMapper.stringToUserRole("OWNER");
+    }
+
+    /**
+     * Roles.valueOf throws and the mapper throws again with the valid roles in the message
+     */
+    @Benchmark
+    public Object stringToUserRoleInvalid() {
+        try {
+            return UserRoleMapper.stringToUserRole("ADMIN");
+        } catch (BadRequestException e) {
+            return e;
+        }
+    }
+}
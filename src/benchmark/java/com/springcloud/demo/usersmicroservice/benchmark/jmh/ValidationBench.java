@@ -0,0 +1,69 @@
+package com.springcloud.demo.usersmicroservice.benchmark.jmh;
+
+import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean Validation of the create request, the password pattern has four lookaheads over the whole value
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ValidationBench {
+
+    ValidatorFactory validatorFactory;
+    Validator validator;
+
+    CreateUserDTO valid;
+    CreateUserDTO invalidPassword;
+    CreateUserDTO longInvalidPassword;
+
+    @Setup
+    public void setup() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+
+        valid = new CreateUserDTO("User1", "user1@gmail.com", "Abcd1234.", null);
+        invalidPassword = new CreateUserDTO("User1", "user1@gmail.com", "abcd1234", null);
+        // no special character, every lookahead but the last one scans the whole value
+        longInvalidPassword = new CreateUserDTO("User1", "user1@gmail.com", "Abcd1234".repeat(16), null);
+    }
+
+    @TearDown
+    public void close() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserDTO>> validCreateUser() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserDTO>> invalidPassword() {
+        return validator.validate(invalidPassword);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserDTO>> longInvalidPassword() {
+        return validator.validate(longInvalidPassword);
+    }
+}
@@ -0,0 +1,56 @@
+package com.springcloud.demo.usersmicroservice.benchmark.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Embedded PostgreSQL with the schema created by the same Flyway migrations used in production
+ */
+public final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {}
+
+    public static EmbeddedPostgres start() throws IOException {
+        return EmbeddedPostgres.builder().start();
+    }
+
+    /**
+     * @param target last migration version to apply, "latest" to apply all of them
+     */
+    public static void migrate(DataSource dataSource, String target) {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .target(target)
+                .load()
+                .migrate();
+    }
+
+    /**
+     * Insert users with name "User {n}", email "user{n}@example.com" and CUSTOMER role
+     */
+    public static void seedUsers(DataSource dataSource, int users) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (name, email, password, created_at, last_updated) " +
+                    "SELECT 'User ' || i, 'user' || i || '@example.com', 'encrypted_password', " +
+                    "now() - make_interval(secs => i), now() " +
+                    "FROM generate_series(1, " + users + ") AS i");
+            statement.execute("INSERT INTO user_roles (role, user_id) SELECT 'CUSTOMER', id FROM users");
+            statement.execute("ANALYZE users");
+            statement.execute("ANALYZE user_roles");
+        }
+    }
+
+    public static void analyze(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE users");
+            statement.execute("ANALYZE user_roles");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.springcloud.demo.usersmicroservice.benchmark.support;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects result lines of a benchmark, prints them and writes them to target/benchmarks/{name}.txt
+ */
+public class BenchmarkReport {
+
+    private final String name;
+    private final List<String> lines = new ArrayList<>();
+
+    public BenchmarkReport(String name, String title) {
+        this.name = name;
+        lines.add(title);
+        lines.add("");
+    }
+
+    public void line(String line) {
+        lines.add(line);
+    }
+
+    /**
+     * Add latency percentiles of a histogram recorded in microseconds
+     */
+    public void latency(String label, Histogram histogram) {
+        lines.add(String.format("%-45s p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms (n=%d)",
+                label,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMaxValue() / 1000.0,
+                histogram.getTotalCount()));
+    }
+
+    public void write() throws IOException {
+        lines.forEach(System.out::println);
+
+        Path file = Path.of("target", "benchmarks", name + ".txt");
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines);
+    }
+}
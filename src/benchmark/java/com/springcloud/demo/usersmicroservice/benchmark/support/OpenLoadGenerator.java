@@ -0,0 +1,108 @@
+package com.springcloud.demo.usersmicroservice.benchmark.support;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open model load: operations start at a fixed arrival rate whether or not the previous ones completed,
+ * each on its own virtual thread.
+ * <p>
+ * Latency is measured from the time an operation was scheduled to start, not from the time it actually started,
+ * so a stall of the application delays the operations queued behind it and shows up in the percentiles
+ * (coordinated omission correction). The uncorrected service time is recorded as well.
+ */
+public class OpenLoadGenerator {
+
+    /**
+     * One call to the application
+     *
+     * @param call returns false when the response is not the expected one
+     */
+    public record Operation(String name, Callable<Boolean> call) {
+    }
+
+    public record Result(Histogram latency, Histogram serviceTime, long errors) {
+    }
+
+    private final double rate;
+    private final Duration warmup;
+    private final Duration duration;
+
+    /**
+     * @param rate operations started per second
+     */
+    public OpenLoadGenerator(double rate, Duration warmup, Duration duration) {
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+    }
+
+    /**
+     * @param next picks the next operation to start, called from the scheduling thread
+     * @return results by operation name, of the operations scheduled after the warmup
+     */
+    public Map<String, Result> run(Supplier<Operation> next) {
+        Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+        Map<String, Histogram> serviceTimes = new ConcurrentHashMap<>();
+        Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        long intervalNanos = (long) (1_000_000_000 / rate);
+        long start = System.nanoTime();
+        long warmupEnd = start + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long intendedStart = start + i * intervalNanos;
+                if (intendedStart >= end) {
+                    break;
+                }
+
+                long wait;
+                while ((wait = intendedStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                Operation operation = next.get();
+                boolean measured = intendedStart >= warmupEnd;
+
+                executor.submit(() -> {
+                    long actualStart = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = operation.call().call();
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    long finished = System.nanoTime();
+
+                    if (measured) {
+                        latencies.computeIfAbsent(operation.name(), name -> new ConcurrentHistogram(3)).recordValue((finished - intendedStart) / 1_000);
+                        serviceTimes.computeIfAbsent(operation.name(), name -> new ConcurrentHistogram(3)).recordValue((finished - actualStart) / 1_000);
+                        if (!ok) {
+                            errors.computeIfAbsent(operation.name(), name -> new LongAdder()).increment();
+                        }
+                    }
+                });
+            }
+        }
+
+        Map<String, Result> results = new ConcurrentHashMap<>();
+        latencies.forEach((name, latency) -> results.put(name, new Result(
+                latency,
+                serviceTimes.get(name),
+                errors.getOrDefault(name, new LongAdder()).sum()
+        )));
+        return results;
+    }
+}
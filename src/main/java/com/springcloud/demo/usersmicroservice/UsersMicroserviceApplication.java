@@ -2,8 +2,10 @@ package com.springcloud.demo.usersmicroservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class UsersMicroserviceApplication {
 
 	public static void main(String[] args) {
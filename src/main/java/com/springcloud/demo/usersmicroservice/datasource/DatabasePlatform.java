@@ -0,0 +1,30 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Database the application runs on, read from the first connection. Statements relying on PostgreSQL
+ * indexes and syntax have a portable fallback for the others, as H2 in tests
+ */
+@Component
+@RequiredArgsConstructor
+public class DatabasePlatform {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean postgres;
+
+    public boolean isPostgres() {
+        Boolean current = postgres;
+        if (current == null) {
+            current = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    DatabaseDriver.fromProductName(connection.getMetaData().getDatabaseProductName()) == DatabaseDriver.POSTGRESQL);
+            postgres = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,54 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Reads of a request go to the primary when the same X-UserId sent a write less than the window ago,
+ * so users see their own changes while the replicas catch up. Other users may read the previous state until then.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String USER_ID_HEADER = "X-UserId";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.recentWriters = window.isZero() ? null : Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return recentWriters == null || request.getHeader(USER_ID_HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String userId = request.getHeader(USER_ID_HEADER);
+
+        if (!SAFE_METHODS.contains(request.getMethod())) {
+            recentWriters.put(userId, Boolean.TRUE);
+        } else if (recentWriters.getIfPresent(userId) == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        try (ReplicaRoutingDataSource.Scope primary = ReplicaRoutingDataSource.usePrimary()) {
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("users.datasource")
+public class ReplicaProperties {
+
+    /**
+     * JDBC urls of read replicas of spring.datasource.url, read only transactions use them in turn.
+     * Their pools take the credentials and settings of the primary one. Empty: everything runs on the primary
+     */
+    private List<String> replicaUrls = new ArrayList<>();
+
+    /**
+     * Max wait for a connection of a replica pool, the read then takes one from the primary and the replica is
+     * left out. Short, as a replica down costs this time to the read finding it. Hikari does not accept less than 250ms
+     */
+    private Duration connectionTimeout = Duration.ofMillis(250);
+
+    /**
+     * Time between checks of the replicas, a replica down is used again after passing one
+     */
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+    /**
+     * Requests with the X-UserId of a write read from the primary for this long after it, 0 to disable
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(2);
+}
@@ -0,0 +1,168 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read only transactions are taken from the replicas in turn, the others from the primary.
+ * Used behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so the connection
+ * is only taken at the first statement, once the transaction is known to be read only.
+ * <p>
+ * A replica failing to give a connection or a health check is left out until it passes a check again. The read
+ * failing to get its connection takes it from the primary, so does every read while no replica is healthy. Replica
+ * pools are built by {@link #replicaPool(HikariDataSource, String, String, Duration)} to fail in a short time. Code run inside {@link #usePrimary()} reads from the primary,
+ * to see its own writes or to fill a cache that later requests will trust.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private static final int VALID_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecks;
+
+    private record Replica(String name, DataSource dataSource, AtomicBoolean healthy) {
+    }
+
+    /**
+     * Restores the routing in place before {@link #usePrimary()}
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration healthCheckInterval, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream().map(replica -> new Replica(replica.getKey(), replica.getValue(), new AtomicBoolean(true))).toList();
+
+        for (Replica replica : this.replicas) {
+            Gauge.builder("users.datasource.replica.healthy", replica.healthy(), healthy -> healthy.get() ? 1 : 0)
+                    .tag("replica", replica.name())
+                    .register(meterRegistry);
+        }
+
+        this.healthChecks = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("users-replica-health").daemon().factory());
+        this.healthChecks.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval.toMillis(), healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary until the scope is closed
+     */
+    public static Scope usePrimary() {
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        return () -> {
+            if (previous == null) {
+                PRIMARY.remove();
+            } else {
+                PRIMARY.set(previous);
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY.get() == null) {
+            int first = next.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(first + i, replicas.size()));
+                if (!replica.healthy().get()) {
+                    continue;
+                }
+
+                try {
+                    return replica.dataSource().getConnection();
+                } catch (SQLException e) {
+                    if (replica.healthy().getAndSet(false)) {
+                        log.warn("Replica {} is down, reading from the other replicas or the primary", replica.name(), e);
+                    }
+                    // the next replica could make the read wait another connection timeout
+                    break;
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * Pool of a replica with the settings of the primary pool, but its own connection timeout. It starts without
+     * connections, a replica down at startup fails its first reads like one going down later: after the timeout,
+     * with an {@link SQLException}
+     */
+    public static HikariDataSource replicaPool(HikariDataSource primary, String poolName, String url, Duration connectionTimeout) {
+        HikariDataSource replica = new HikariDataSource();
+        primary.copyStateTo(replica);
+        replica.setPoolName(poolName);
+        replica.setJdbcUrl(url);
+        replica.setConnectionTimeout(connectionTimeout.toMillis());
+        replica.setInitializationFailTimeout(-1);
+        return replica;
+    }
+
+    /**
+     * @return the data sources read only transactions take their connections from now: the healthy replicas,
+     * or the primary when none is
+     */
+    public List<DataSource> getReadDataSources() {
+        List<DataSource> healthy = replicas.stream()
+                .filter(replica -> replica.healthy().get())
+                .map(Replica::dataSource)
+                .toList();
+        return healthy.isEmpty() ? List.of(primary) : healthy;
+    }
+
+    /**
+     * Replicas are only used with the credentials of the primary
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections to the replicas take the credentials of the primary");
+    }
+
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource().getConnection()) {
+                healthy = connection.isValid(VALID_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                healthy = false;
+            }
+
+            if (replica.healthy().getAndSet(healthy) != healthy) {
+                log.warn("Replica {} is {}", replica.name(), healthy ? "up" : "down");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        healthChecks.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.springcloud.demo.usersmicroservice.exceptions;
 
+import com.springcloud.demo.usersmicroservice.monitoring.ExceptionMetrics;
 import com.springcloud.demo.usersmicroservice.monitoring.TracingExceptions;
 import com.springcloud.demo.usersmicroservice.exceptions.dto.ErrorResponseDTO;
 import io.swagger.v3.oas.annotations.Hidden;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingRequestHeaderException;
@@ -22,11 +25,13 @@ import java.util.List;
 public class HandlerExceptions {
 
     private final TracingExceptions tracingExceptions;
+    private final ExceptionMetrics exceptionMetrics;
 
     @ExceptionHandler(NotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ErrorResponseDTO handleNotFoundExceptions(NotFoundException e){
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.NOT_FOUND);
         return ErrorResponseDTO
                 .builder()
                 .status(HttpStatus.NOT_FOUND.value())
@@ -38,6 +43,7 @@ public class HandlerExceptions {
     @ResponseStatus(HttpStatus.FORBIDDEN)
     public ErrorResponseDTO handleForbiddenExceptions(ForbiddenException e){
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.FORBIDDEN);
         return ErrorResponseDTO
                 .builder()
                 .status(HttpStatus.FORBIDDEN.value())
@@ -45,10 +51,23 @@ public class HandlerExceptions {
                 .build();
     }
 
+    @ExceptionHandler(PreconditionFailedException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ErrorResponseDTO handlePreconditionFailedException(PreconditionFailedException e){
+        tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.PRECONDITION_FAILED);
+        return ErrorResponseDTO
+                .builder()
+                .status(HttpStatus.PRECONDITION_FAILED.value())
+                .message(e.getMessage())
+                .build();
+    }
+
     @ExceptionHandler(BadRequestException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponseDTO handleBadRequestException(BadRequestException e){
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.BAD_REQUEST);
         return ErrorResponseDTO
                 .builder()
                 .status(HttpStatus.BAD_REQUEST.value())
@@ -56,11 +75,26 @@ public class HandlerExceptions {
                 .build();
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorResponseDTO> handleServiceUnavailableException(ServiceUnavailableException e){
+        tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.SERVICE_UNAVAILABLE);
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(ErrorResponseDTO
+                        .builder()
+                        .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .message(e.getMessage())
+                        .build());
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponseDTO handleMethodArgumentNotValidException(MethodArgumentNotValidException e){
         List<String> errors = e.getFieldErrors().stream().map(err -> err.getField() + " " + err.getDefaultMessage()).toList();
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.BAD_REQUEST);
         return ErrorResponseDTO
                 .builder()
                 .status(HttpStatus.BAD_REQUEST.value())
@@ -80,6 +114,7 @@ public class HandlerExceptions {
         }
 
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.BAD_REQUEST);
 
         return ErrorResponseDTO
                 .builder()
@@ -99,6 +134,7 @@ public class HandlerExceptions {
         String message = e.getMessage().split(":")[0];
 
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.BAD_REQUEST);
 
         return ErrorResponseDTO
                 .builder()
@@ -114,6 +150,7 @@ public class HandlerExceptions {
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponseDTO handleMissingRequestHeaderException(MissingRequestHeaderException e){
         tracingExceptions.addExceptionMetadata(e.getMessage());
+        exceptionMetrics.increment(e, HttpStatus.BAD_REQUEST);
 
         return ErrorResponseDTO
                 .builder()
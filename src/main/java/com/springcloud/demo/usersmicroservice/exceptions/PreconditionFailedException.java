@@ -0,0 +1,7 @@
+package com.springcloud.demo.usersmicroservice.exceptions;
+
+public class PreconditionFailedException extends RuntimeException{
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
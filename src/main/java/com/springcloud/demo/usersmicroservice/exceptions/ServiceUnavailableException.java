@@ -0,0 +1,19 @@
+package com.springcloud.demo.usersmicroservice.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class ServiceUnavailableException extends RuntimeException{
+
+    /**
+     * Time clients should wait before retrying, sent as Retry-After header
+     */
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,51 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import com.springcloud.demo.usersmicroservice.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Declared here and not as a component, so the web slice tests of the controllers do not pick the filter up
+ */
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "users.concurrency-limit.enabled", matchIfMissing = true)
+    public ConcurrencyLimitFilter concurrencyLimitFilter(
+            ConcurrencyLimitProperties properties,
+            HikariDataSource hikariDataSource,
+            ObjectProvider<ReplicaRoutingDataSource> replicaDataSource,
+            MeterRegistry meterRegistry,
+            @Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver
+    ) {
+        ConcurrencyLimitProperties.Priority priority = properties.getPriority();
+        PriorityAdmission admission = new PriorityAdmission(readPools(hikariDataSource, replicaDataSource.getIfAvailable()), priority.getReservedConnections(), priority.getMaxQueueTime());
+
+        return new ConcurrencyLimitFilter(properties, admission, meterRegistry, handlerExceptionResolver);
+    }
+
+    /**
+     * List and search run in read only transactions: on the healthy replicas when there are, else on the primary
+     */
+    private static Supplier<List<HikariDataSource>> readPools(HikariDataSource primary, ReplicaRoutingDataSource replicas) {
+        if (replicas == null) {
+            return () -> List.of(primary);
+        }
+
+        return () -> replicas.getReadDataSources()
+                .stream()
+                .filter(HikariDataSource.class::isInstance)
+                .map(HikariDataSource.class::cast)
+                .toList();
+    }
+}
@@ -0,0 +1,148 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds the requests over the adaptive concurrency limit of their {@link EndpointClass} before they queue for
+ * the database or the password hasher, a fast 503 instead of a timeout seconds later.
+ * <p>
+ * Once under its limit a request goes through {@link PriorityAdmission}: list and search wait, and are rejected
+ * first, when the connections left in the pools they read from are the ones reserved for the other classes.
+ * <p>
+ * Rejections go through the exception handlers like the ones thrown by controllers. Async requests, create and
+ * update, hold their permit until the response is complete.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final ConcurrencyLimitProperties properties;
+    private final PriorityAdmission admission;
+    private final HandlerExceptionResolver handlerExceptionResolver;
+    private final Map<EndpointClass, GradientLimiter> limiters = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> rejections = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> starved = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Timer> queueTimes = new EnumMap<>(EndpointClass.class);
+
+    ConcurrencyLimitFilter(ConcurrencyLimitProperties properties, PriorityAdmission admission, MeterRegistry meterRegistry, HandlerExceptionResolver handlerExceptionResolver) {
+        this.properties = properties;
+        this.admission = admission;
+        this.handlerExceptionResolver = handlerExceptionResolver;
+
+        for (EndpointClass endpoint : EndpointClass.values()) {
+            ConcurrencyLimitProperties.Limit bounds = properties.getEndpoints().getOrDefault(endpoint, new ConcurrencyLimitProperties.Limit());
+            GradientLimiter limiter = new GradientLimiter(properties, bounds, System::nanoTime);
+            String tag = endpoint.name().toLowerCase(Locale.ROOT);
+
+            limiters.put(endpoint, limiter);
+            rejections.put(endpoint, Counter.builder("users.concurrency.rejected").tag("endpoint", tag).register(meterRegistry));
+            Gauge.builder("users.concurrency.limit", limiter, GradientLimiter::getLimit).tag("endpoint", tag).register(meterRegistry);
+            Gauge.builder("users.concurrency.in.flight", limiter, GradientLimiter::getInFlight).tag("endpoint", tag).register(meterRegistry);
+            starved.put(endpoint, Counter.builder("users.admission.starved").tag("endpoint", tag).register(meterRegistry));
+            queueTimes.put(endpoint, Timer.builder("users.admission.queue").tag("endpoint", tag).publishPercentileHistogram().register(meterRegistry));
+        }
+
+        Gauge.builder("users.admission.waiting", admission, PriorityAdmission::getWaiting).register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return EndpointClass.of(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        EndpointClass endpoint = EndpointClass.of(request);
+        GradientLimiter.Permit permit = limiters.get(endpoint).tryAcquire();
+
+        if (permit == null) {
+            rejections.get(endpoint).increment();
+            reject(request, response);
+            return;
+        }
+
+        if (!admit(endpoint)) {
+            permit.cancel();
+            starved.get(endpoint).increment();
+            reject(request, response);
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(permit, admission, response));
+            } else {
+                release(permit, admission, response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value());
+            }
+        }
+    }
+
+    private boolean admit(EndpointClass endpoint) {
+        long start = System.nanoTime();
+        try {
+            return admission.enter(endpoint.isLowPriority());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queueTimes.get(endpoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response) {
+        handlerExceptionResolver.resolveException(request, response, null, new ServiceUnavailableException(
+                "Too many requests in progress, try again later", properties.getRetryAfter()));
+    }
+
+    private static void release(GradientLimiter.Permit permit, PriorityAdmission admission, boolean dropped) {
+        if (permit.release(dropped)) {
+            admission.exit();
+        }
+    }
+
+    GradientLimiter limiter(EndpointClass endpoint) {
+        return limiters.get(endpoint);
+    }
+
+    private record ReleaseListener(GradientLimiter.Permit permit, PriorityAdmission admission, HttpServletResponse response) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(permit, admission, response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(permit, admission, true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(permit, admission, false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // still the same request, the permit is released when it completes
+        }
+    }
+}
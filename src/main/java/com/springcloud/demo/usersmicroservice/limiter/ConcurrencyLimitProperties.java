@@ -0,0 +1,85 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("users.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /**
+     * Requests over the adaptive limit of their endpoint class are answered 503 before reaching the controllers
+     */
+    boolean enabled = true;
+
+    /**
+     * Limits of each endpoint class, they adapt independently
+     */
+    Map<EndpointClass, Limit> endpoints = new EnumMap<>(Map.of(
+            EndpointClass.AUTH, new Limit(50, 10, 500),
+            EndpointClass.READ, new Limit(50, 10, 500),
+            EndpointClass.LIST, new Limit(20, 2, 200),
+            EndpointClass.WRITE, new Limit(10, 2, 100)
+    ));
+
+    /**
+     * How much the latency may grow over the long term average before the limit goes down, 2 allows twice
+     */
+    double tolerance = 2.0;
+
+    /**
+     * Weight of each new limit, lower changes the limit slower
+     */
+    double smoothing = 0.2;
+
+    /**
+     * Factor applied to the limit when a request fails with 503 behind the limiter, as when the hasher queue is full
+     */
+    double backoffRatio = 0.9;
+
+    /**
+     * Samples averaged in the long term latency
+     */
+    int longWindow = 600;
+
+    Duration retryAfter = Duration.ofSeconds(1);
+
+    Priority priority = new Priority();
+
+    @Data
+    public static class Priority {
+
+        /**
+         * Connections of each pool kept for auth lookups, reads of one user and writes. List and search requests
+         * wait while no more are left in the pools they read from
+         */
+        int reservedConnections = 3;
+
+        /**
+         * Max time a list or search request waits for a connection to be left, then it is rejected with 503
+         */
+        Duration maxQueueTime = Duration.ofMillis(500);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Limit {
+
+        int initialLimit = 20;
+
+        int minLimit = 2;
+
+        int maxLimit = 200;
+
+        public Limit(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Endpoints with their own concurrency limit, their latency and bottleneck differ
+ */
+public enum EndpointClass {
+    /**
+     * GET /api/users/email/{email}, on every login
+     */
+    AUTH(false),
+    /**
+     * Reads of one user, bound by the database
+     */
+    READ(false),
+    /**
+     * List and search, the most expensive reads. Only admitted while connections are left for the others
+     */
+    LIST(true),
+    /**
+     * Create, update, delete and roles. Create and update wait for the password hasher
+     */
+    WRITE(false);
+
+    private final boolean lowPriority;
+
+    EndpointClass(boolean lowPriority) {
+        this.lowPriority = lowPriority;
+    }
+
+    boolean isLowPriority() {
+        return lowPriority;
+    }
+
+    private static final String USERS = "/api/users";
+
+    /**
+     * Matches whole path segments, /api/usersX is outside the API
+     *
+     * @return null for requests not limited: outside the API, and import and export which stream for minutes
+     */
+    static EndpointClass of(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean users = path.equals(USERS) || path.startsWith(USERS + "/");
+        if (!users || path.equals(USERS + "/import") || path.equals(USERS + "/export")) {
+            return null;
+        }
+
+        return switch (request.getMethod()) {
+            case "GET", "HEAD" -> {
+                if (path.startsWith(USERS + "/email/")) {
+                    yield AUTH;
+                }
+                yield path.equals(USERS) || path.equals(USERS + "/") ? LIST : READ;
+            }
+            case "OPTIONS" -> null;
+            default -> WRITE;
+        };
+    }
+}
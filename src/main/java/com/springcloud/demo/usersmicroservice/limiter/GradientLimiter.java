@@ -0,0 +1,132 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit adapted to the measured latency, after the gradient algorithm of Netflix concurrency-limits.
+ * <p>
+ * Each latency sample is compared with the long term average. While it stays within the tolerance the limit grows by
+ * its square root, past it the limit shrinks in proportion to the latency increase. Samples taken while less than half
+ * of the limit was in use do not change it, the limit was not what bound the latency then.
+ */
+class GradientLimiter {
+
+    private final ConcurrencyLimitProperties properties;
+    private final ConcurrencyLimitProperties.Limit bounds;
+    private final LongSupplier nanoTime;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile double limit;
+
+    /**
+     * Guarded by the lock
+     */
+    private double longLatency;
+    private long samples;
+
+    GradientLimiter(ConcurrencyLimitProperties properties, ConcurrencyLimitProperties.Limit bounds, LongSupplier nanoTime) {
+        this.properties = properties;
+        this.bounds = bounds;
+        this.nanoTime = nanoTime;
+        this.limit = bounds.getInitialLimit();
+    }
+
+    /**
+     * @return null when the limit is reached
+     */
+    Permit tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return new Permit(nanoTime.getAsLong(), current + 1);
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @param dropped the request failed because something behind the limiter was overloaded
+     */
+    private void onSample(long latency, int inFlightAtStart, boolean dropped) {
+        lock.lock();
+        try {
+            if (dropped) {
+                limit = clamp(limit * properties.getBackoffRatio());
+                return;
+            }
+
+            // plain average of the first samples, then exponential over the window
+            samples++;
+            longLatency += (latency - longLatency) / Math.min(samples, properties.getLongWindow());
+
+            // latency back to normal after an overload, the average would keep the limit high for too long
+            if (longLatency / latency > 2) {
+                longLatency *= 0.95;
+            }
+
+            if (inFlightAtStart < limit / 2) {
+                return;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longLatency / Math.max(1, latency)));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            limit = clamp(limit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(bounds.getMinLimit(), Math.min(bounds.getMaxLimit(), value));
+    }
+
+    /**
+     * One request in flight, released once when it completes
+     */
+    class Permit {
+
+        private final long start;
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long start, int inFlightAtStart) {
+            this.start = start;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * @return false when already released
+         */
+        boolean release(boolean dropped) {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlight.decrementAndGet();
+            onSample(nanoTime.getAsLong() - start, inFlightAtStart, dropped);
+            return true;
+        }
+
+        /**
+         * Releases without a latency sample, the request was not served
+         */
+        void cancel() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
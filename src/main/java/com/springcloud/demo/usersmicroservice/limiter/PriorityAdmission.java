@@ -0,0 +1,156 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps pooled connections for the requests on the login path. Low priority requests are only admitted while the
+ * pools they read from have more than the reserved connections of each pool left, otherwise they wait for
+ * connections to be released up to the max queue time. The others are always admitted.
+ * <p>
+ * Usage is read from the pools themselves, so cache hits and requests waiting for the password hasher do not count,
+ * and the connections held by imports and exports do. Low priority requests admitted but not yet asking the pool
+ * for a connection are not seen there, they are counted as pending until their thread takes one through
+ * {@link PriorityAdmissionDataSource} or the request ends, so a burst of them can not be admitted on the same
+ * free connections. Pending requests are at most the connections left over the reserved ones.
+ * <p>
+ * Waiting requests are signalled when a limited request ends, connections are released before the response is
+ * written. Connections released by imports and exports are seen at the next one.
+ */
+class PriorityAdmission {
+
+    /**
+     * Admission of the low priority request running on the thread, until it takes a connection
+     */
+    private static final ThreadLocal<PriorityAdmission> PENDING = new ThreadLocal<>();
+
+    private final Supplier<List<HikariDataSource>> pools;
+    private final int reservedConnections;
+    private final Duration maxQueueTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    /**
+     * Written under the lock
+     */
+    private volatile int waiting;
+
+    /**
+     * Written under the lock
+     */
+    private volatile int pending;
+
+    /**
+     * @param pools the pools low priority requests take their connections from at the time of the call
+     */
+    PriorityAdmission(Supplier<List<HikariDataSource>> pools, int reservedConnections, Duration maxQueueTime) {
+        this.pools = pools;
+        this.reservedConnections = reservedConnections;
+        this.maxQueueTime = maxQueueTime;
+    }
+
+    /**
+     * An admitted low priority request is pending on the calling thread until {@link #connected()} or
+     * {@link #exit()} on the same thread
+     *
+     * @return false when no connection was left for a low priority request within the max queue time
+     */
+    boolean enter(boolean lowPriority) throws InterruptedException {
+        if (!lowPriority) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (!hasConnectionsLeft()) {
+                waiting++;
+                try {
+                    long remaining = maxQueueTime.toNanos();
+                    while (!hasConnectionsLeft()) {
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        remaining = released.awaitNanos(remaining);
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+
+            pending++;
+            PENDING.set(this);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The current thread took a connection, it is counted in the pool usage from now on
+     */
+    static void connected() {
+        PriorityAdmission admission = PENDING.get();
+        if (admission == null) {
+            return;
+        }
+
+        PENDING.remove();
+        admission.lock.lock();
+        try {
+            admission.pending--;
+        } finally {
+            admission.lock.unlock();
+        }
+    }
+
+    /**
+     * A request left, it may have released a connection. A low priority one that never took a connection
+     * is no longer pending
+     */
+    void exit() {
+        boolean wasPending = PENDING.get() == this;
+        if (!wasPending && waiting == 0) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (wasPending) {
+                PENDING.remove();
+                pending--;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getWaiting() {
+        return waiting;
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    /**
+     * Called under the lock
+     */
+    private boolean hasConnectionsLeft() {
+        List<HikariDataSource> current = pools.get();
+
+        int left = 0;
+        for (HikariDataSource pool : current) {
+            // null until the first connection is taken
+            HikariPoolMXBean usage = pool.getHikariPoolMXBean();
+            left += pool.getMaximumPoolSize() - (usage == null ? 0 : usage.getActiveConnections() + usage.getThreadsAwaitingConnection());
+        }
+        return left - pending > reservedConnections * current.size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Tells {@link PriorityAdmission} the low priority request of the current thread took its connection, it is seen
+ * in the pool usage from then on. Wraps the data source taking connections from the pools, behind any lazy proxy,
+ * and only returns once the pool counts the connection as active.
+ */
+public class PriorityAdmissionDataSource extends DelegatingDataSource {
+
+    public PriorityAdmissionDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return obtainTargetDataSource().getConnection();
+        } finally {
+            PriorityAdmission.connected();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        try {
+            return obtainTargetDataSource().getConnection(username, password);
+        } finally {
+            PriorityAdmission.connected();
+        }
+    }
+}
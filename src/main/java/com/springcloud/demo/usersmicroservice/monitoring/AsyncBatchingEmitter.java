@@ -0,0 +1,106 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Entity;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue finished segments and send them to the daemon from a single background thread, so request threads
+ * never serialize segments or do UDP sends. When the queue is full segments are dropped instead of blocking.
+ */
+@Slf4j
+public class AsyncBatchingEmitter extends Emitter implements AutoCloseable {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final Emitter delegate;
+    private final BlockingQueue<Entity> queue;
+    private final int batchSize;
+    private final Counter dropped;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    public AsyncBatchingEmitter(Emitter delegate, int queueCapacity, int batchSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.dropped = Counter.builder("users.tracing.emitter.dropped").register(meterRegistry);
+        Gauge.builder("users.tracing.emitter.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+
+        this.thread = new Thread(this::run, "tracing-emitter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public boolean sendSegment(Segment segment) {
+        return enqueue(segment);
+    }
+
+    @Override
+    public boolean sendSubsegment(Subsegment subsegment) {
+        return enqueue(subsegment);
+    }
+
+    private boolean enqueue(Entity entity) {
+        if (queue.offer(entity)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void run() {
+        List<Entity> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Entity first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                batch.forEach(this::send);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(Entity entity) {
+        try {
+            if (entity instanceof Segment segment) {
+                delegate.sendSegment(segment);
+            } else if (entity instanceof Subsegment subsegment) {
+                delegate.sendSubsegment(subsegment);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to send segment {}", entity.getId(), e);
+        }
+    }
+
+    /**
+     * Send the segments already queued and stop the emitter thread
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,28 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Count the exceptions turned into error responses, by exception type and response status
+ */
+@Component
+@RequiredArgsConstructor
+public class ExceptionMetrics {
+
+    public static final String HANDLED_COUNTER = "users.exceptions.handled";
+
+    private final MeterRegistry meterRegistry;
+
+    public void increment(Exception e, HttpStatus status) {
+        Counter
+                .builder(HANDLED_COUNTER)
+                .tag("exception", e.getClass().getSimpleName())
+                .tag("status", String.valueOf(status.value()))
+                .register(meterRegistry)
+                .increment();
+    }
+}
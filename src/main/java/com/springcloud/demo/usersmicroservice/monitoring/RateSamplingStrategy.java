@@ -0,0 +1,32 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.amazonaws.xray.strategy.sampling.SamplingRequest;
+import com.amazonaws.xray.strategy.sampling.SamplingResponse;
+import com.amazonaws.xray.strategy.sampling.SamplingStrategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sample a fixed fraction of requests, without polling sampling rules from the X-Ray daemon
+ */
+class RateSamplingStrategy implements SamplingStrategy {
+
+    private final double rate;
+
+    RateSamplingStrategy(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Sampling rate must be between 0 and 1, was " + rate);
+        }
+        this.rate = rate;
+    }
+
+    @Override
+    public SamplingResponse shouldTrace(SamplingRequest samplingRequest) {
+        return new SamplingResponse(rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    @Override
+    public boolean isForcedSamplingSupported() {
+        return false;
+    }
+}
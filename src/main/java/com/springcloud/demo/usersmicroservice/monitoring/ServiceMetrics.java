@@ -0,0 +1,70 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Time the phases of a service operation in users.service.phase, tagged by operation and phase,
+ * to see which one dominates the latency of the whole operation timed by {@code @Timed}
+ */
+@Component
+public class ServiceMetrics {
+
+    public static final String PHASE_TIMER = "users.service.phase";
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Phase {
+        DB("db"),
+        HASHING("hashing"),
+        MAPPING("mapping");
+
+        private final String tag;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Phase, Map<String, Timer>> timers = new EnumMap<>(Phase.class);
+
+    public ServiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (Phase phase : Phase.values()) {
+            timers.put(phase, new ConcurrentHashMap<>());
+        }
+    }
+
+    public <T> T record(String operation, Phase phase, Supplier<T> call) {
+        return timer(operation, phase).record(call);
+    }
+
+    public void run(String operation, Phase phase, Runnable call) {
+        timer(operation, phase).record(call);
+    }
+
+    /**
+     * Time until the returned future completes, including the time waiting for an executor
+     */
+    public <T> CompletableFuture<T> recordAsync(String operation, Phase phase, Supplier<CompletableFuture<T>> call) {
+        Timer timer = timer(operation, phase);
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        return call.get().whenComplete((result, error) -> sample.stop(timer));
+    }
+
+    private Timer timer(String operation, Phase phase) {
+        return timers.get(phase).computeIfAbsent(operation, name -> Timer
+                .builder(PHASE_TIMER)
+                .tag("operation", name)
+                .tag("phase", phase.getTag())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,128 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.amazonaws.xray.entities.Subsegment;
+import com.amazonaws.xray.sql.SqlSubsegments;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Record SQL statements as X-Ray subsegments, only for sampled requests and only when they are slow or fail.
+ * <p>
+ * Connections borrowed outside a sampled segment are returned unwrapped, so unsampled requests and background
+ * work pay nothing. Statements are timed and the subsegment is created after they complete, fast statements
+ * never build one.
+ */
+@Slf4j
+public class SqlTracingDataSource extends DelegatingDataSource {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final long slowThresholdNanos;
+    private final boolean collectSqlQueries;
+
+    public SqlTracingDataSource(DataSource dataSource, Duration slowThreshold, boolean collectSqlQueries) {
+        super(dataSource);
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.collectSqlQueries = collectSqlQueries;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = obtainTargetDataSource().getConnection();
+        return isSampled() ? traced(connection) : connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Connection connection = obtainTargetDataSource().getConnection(username, password);
+        return isSampled() ? traced(connection) : connection;
+    }
+
+    private boolean isSampled() {
+        Entity entity = AWSXRay.getTraceEntity();
+        return entity != null && entity.getParentSegment().isSampled();
+    }
+
+    private Connection traced(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String value ? value : null;
+                return traced(statement, sql);
+            }
+            return result;
+        });
+    }
+
+    private Statement traced(Statement statement, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+
+            String executedSql = sql == null && args != null && args.length > 0 && args[0] instanceof String value ? value : sql;
+            Instant start = Instant.now();
+            long startNanos = System.nanoTime();
+            Throwable failure = null;
+            try {
+                return invoke(statement, method, args);
+            } catch (Throwable e) {
+                failure = e;
+                throw e;
+            } finally {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                if (failure != null || elapsedNanos >= slowThresholdNanos) {
+                    record(statement, executedSql, start, elapsedNanos, failure);
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a subsegment to the current entity spanning the statement that just completed
+     */
+    private void record(Statement statement, String sql, Instant start, long elapsedNanos, Throwable failure) {
+        if (AWSXRay.getTraceEntity() == null) {
+            return;
+        }
+
+        try {
+            Subsegment subsegment = SqlSubsegments.forQuery(statement.getConnection(), collectSqlQueries ? sql : null);
+            double startTime = start.getEpochSecond() + start.getNano() / NANOS_PER_SECOND;
+            subsegment.setStartTime(startTime);
+            subsegment.setEndTime(startTime + elapsedNanos / NANOS_PER_SECOND);
+            if (failure != null) {
+                subsegment.addException(failure);
+            }
+            AWSXRay.endSubsegment();
+        } catch (SQLException | RuntimeException e) {
+            log.debug("Unable to record SQL subsegment", e);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
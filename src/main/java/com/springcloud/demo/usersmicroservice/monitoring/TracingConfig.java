@@ -1,19 +1,39 @@
 package com.springcloud.demo.usersmicroservice.monitoring;
 
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorder;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.emitters.UDPEmitter;
 import com.amazonaws.xray.jakarta.servlet.AWSXRayServletFilter;
-import com.amazonaws.xray.sql.TracingDataSource;
+import com.amazonaws.xray.strategy.jakarta.SegmentNamingStrategy;
+import com.springcloud.demo.usersmicroservice.datasource.ReadYourWritesFilter;
+import com.springcloud.demo.usersmicroservice.datasource.ReplicaProperties;
+import com.springcloud.demo.usersmicroservice.datasource.ReplicaRoutingDataSource;
+import com.springcloud.demo.usersmicroservice.limiter.PriorityAdmissionDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 
 import javax.sql.DataSource;
+import java.net.SocketException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class TracingConfig {
 
+    private static final String HAS_REPLICAS = "'${users.datasource.replica-urls:}' != ''";
+
     @Bean
     @Primary
     @ConfigurationProperties("spring.datasource")
@@ -21,21 +41,81 @@ public class TracingConfig {
         return new DataSourceProperties();
     }
 
+    /**
+     * Only connection pool of the primary. Flyway migrates with it directly so migrations are not traced,
+     * the rest of the application uses it through {@link #dataSource(HikariDataSource, TracingProperties, ObjectProvider)}
+     */
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource hikariDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * With replicas the connection is only taken at the first statement, when the transaction is known to be
+     * read only, from {@link ReplicaRoutingDataSource}. {@link PriorityAdmissionDataSource} sees the connection
+     * when it is taken from a pool
+     */
     @Bean
     @Primary
-    public DataSource dataSource(DataSourceProperties dataSourceProperties) {
-        return TracingDataSource.decorate(dataSourceProperties.initializeDataSourceBuilder().build());
+    public DataSource dataSource(HikariDataSource hikariDataSource, TracingProperties tracingProperties, ObjectProvider<ReplicaRoutingDataSource> replicaDataSource) {
+        ReplicaRoutingDataSource replicas = replicaDataSource.getIfAvailable();
+        DataSource target = new PriorityAdmissionDataSource(replicas == null ? hikariDataSource : replicas);
+
+        if (replicas != null) {
+            target = new LazyConnectionDataSourceProxy(target);
+        }
+        return new SqlTracingDataSource(target, tracingProperties.getSlowSqlThreshold(), tracingProperties.isCollectSqlQueries());
+    }
+
+    /**
+     * One pool per replica with the settings of the primary pool, except the connection timeout
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression(HAS_REPLICAS)
+    public ReplicaRoutingDataSource replicaDataSource(HikariDataSource hikariDataSource, ReplicaProperties replicaProperties, MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<String> urls = replicaProperties.getReplicaUrls();
+
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = ReplicaRoutingDataSource.replicaPool(hikariDataSource,
+                    hikariDataSource.getPoolName() + "-replica-" + (i + 1), urls.get(i), replicaProperties.getConnectionTimeout());
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaRoutingDataSource(hikariDataSource, replicas, replicaProperties.getHealthCheckInterval(), meterRegistry);
     }
 
     @Bean
-    @FlywayDataSource
-    @ConfigurationProperties("spring.datasource")
-    public DataSource flywayDataSource(DataSourceProperties dataSourceProperties) {
-        return dataSourceProperties.initializeDataSourceBuilder().build();
+    @ConditionalOnExpression(HAS_REPLICAS)
+    public ReadYourWritesFilter readYourWritesFilter(ReplicaProperties replicaProperties) {
+        return new ReadYourWritesFilter(replicaProperties.getReadYourWritesWindow());
+    }
+
+    @Bean(destroyMethod = "close")
+    public AsyncBatchingEmitter tracingEmitter(TracingProperties tracingProperties, MeterRegistry meterRegistry) throws SocketException {
+        TracingProperties.Emitter emitter = tracingProperties.getEmitter();
+        return new AsyncBatchingEmitter(new UDPEmitter(), emitter.getQueueCapacity(), emitter.getBatchSize(), meterRegistry);
+    }
+
+    /**
+     * Registered as the global recorder, used by the code calling {@link AWSXRay} directly
+     */
+    @Bean
+    public AWSXRayRecorder tracingRecorder(TracingProperties tracingProperties, AsyncBatchingEmitter tracingEmitter) {
+        AWSXRayRecorderBuilder builder = AWSXRayRecorderBuilder.standard().withEmitter(tracingEmitter);
+        if (tracingProperties.getSamplingRate() != null) {
+            builder.withSamplingStrategy(new RateSamplingStrategy(tracingProperties.getSamplingRate()));
+        }
+
+        AWSXRayRecorder recorder = builder.build();
+        AWSXRay.setGlobalRecorder(recorder);
+        return recorder;
     }
 
     @Bean
-    public AWSXRayServletFilter tracingFilter() {
-        return new AWSXRayServletFilter("users-ms");
+    public AWSXRayServletFilter tracingFilter(AWSXRayRecorder tracingRecorder) {
+        return new AWSXRayServletFilter(SegmentNamingStrategy.fixed("users-ms"), tracingRecorder);
     }
 }
@@ -0,0 +1,42 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.tracing")
+public class TracingProperties {
+
+    /**
+     * Fraction of requests traced, between 0 and 1. When not set the X-Ray sampling rules apply
+     */
+    private Double samplingRate;
+
+    /**
+     * SQL statements of sampled requests faster than this are not recorded, failed statements always are
+     */
+    private Duration slowSqlThreshold = Duration.ofMillis(10);
+
+    /**
+     * Add the SQL text of recorded statements to the subsegment
+     */
+    private boolean collectSqlQueries = false;
+
+    private Emitter emitter = new Emitter();
+
+    @Data
+    public static class Emitter {
+
+        /**
+         * Segments waiting to be sent to the X-Ray daemon, more are dropped
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * Segments sent per wake up of the emitter thread
+         */
+        private int batchSize = 50;
+    }
+}
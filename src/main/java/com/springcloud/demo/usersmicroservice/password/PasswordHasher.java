@@ -0,0 +1,139 @@
+package com.springcloud.demo.usersmicroservice.password;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Hash passwords on a dedicated bounded pool, so a burst of signups can not take the request threads.
+ * When all threads are busy and the queue is full new requests fail fast with {@link ServiceUnavailableException}.
+ * <p>
+ * Hashing is CPU bound so it stays on platform threads even when virtual threads are enabled, the returned
+ * future completes on the application task executor so the work that follows (saving the user) does not hold
+ * a hasher thread.
+ */
+@Component
+public class PasswordHasher implements DisposableBean {
+
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasherProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Executor monitoredExecutor;
+    private final Executor completionExecutor;
+    private final Timer hashTimer;
+    private final Counter rejections;
+
+    public PasswordHasher(
+            PasswordEncoder passwordEncoder,
+            PasswordHasherProperties properties,
+            MeterRegistry meterRegistry,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor completionExecutor
+    ) {
+        this.passwordEncoder = passwordEncoder;
+        this.properties = properties;
+        this.completionExecutor = completionExecutor;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                properties.getThreads(),
+                properties.getThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.monitoredExecutor = ExecutorServiceMetrics.monitor(meterRegistry, executor, "users.password.hash");
+        this.hashTimer = Timer.builder("users.password.hash.duration").register(meterRegistry);
+        this.rejections = Counter.builder("users.password.hash.rejected").register(meterRegistry);
+    }
+
+    /**
+     * @throws ServiceUnavailableException when the queue is full
+     */
+    public CompletableFuture<String> encode(String rawPassword) {
+        Entity traceEntity = AWSXRay.getGlobalRecorder().getTraceEntity();
+
+        try {
+            return CompletableFuture
+                    .supplyAsync(() -> hash(rawPassword, traceEntity), monitoredExecutor)
+                    .thenApplyAsync(Function.identity(), completionExecutor);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new ServiceUnavailableException("Too many password requests in progress, try again later", properties.getRetryAfter());
+        }
+    }
+
+    /**
+     * Hashes a batch of the bulk import, blocking the caller until all are done.
+     * At most one password per hasher thread is in flight so the import keeps the pool busy without taking the
+     * queue from signups, when the queue is full anyway the caller hashes the password itself instead of failing.
+     *
+     * @return hashes in the order of the passwords
+     */
+    public List<String> encodeAll(List<String> rawPasswords) {
+        Semaphore inFlight = new Semaphore(properties.getThreads());
+        List<CompletableFuture<String>> hashes = new ArrayList<>(rawPasswords.size());
+
+        for (String rawPassword : rawPasswords) {
+            inFlight.acquireUninterruptibly();
+            try {
+                hashes.add(CompletableFuture
+                        .supplyAsync(() -> hash(rawPassword, null), monitoredExecutor)
+                        .whenComplete((hash, e) -> inFlight.release()));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                hashes.add(CompletableFuture.completedFuture(hash(rawPassword, null)));
+            }
+        }
+
+        return hashes.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Runs on the hasher thread, continuing the X-Ray trace of the request when there is one
+     */
+    private String hash(String rawPassword, Entity traceEntity) {
+        if (traceEntity == null) {
+            return hashTimer.record(() -> passwordEncoder.encode(rawPassword));
+        }
+
+        AWSXRay.getGlobalRecorder().setTraceEntity(traceEntity);
+        try {
+            AWSXRay.beginSubsegment("password-hash");
+            return hashTimer.record(() -> passwordEncoder.encode(rawPassword));
+        } finally {
+            AWSXRay.endSubsegment();
+            AWSXRay.getGlobalRecorder().clearTraceEntity();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,23 @@
+package com.springcloud.demo.usersmicroservice.password;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.password-hashing")
+public class PasswordHasherProperties {
+
+    /**
+     * Threads hashing passwords. Hashing is CPU bound so should not exceed available cores
+     */
+    private int threads = 2;
+
+    /**
+     * Hash requests waiting for a thread, more are rejected with 503
+     */
+    private int queueCapacity = 50;
+
+    private Duration retryAfter = Duration.ofSeconds(1);
+}
@@ -40,9 +40,11 @@ public class UserRoleController {
     @DeleteMapping("/roles/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ApiResponses({
+            @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
+            @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
             @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
     })
-    public SimpleResponseDTO deleteUserRole(@PathVariable @UUID String id, @RequestHeader("X-UserId") String idUserLogged){
+    public SimpleResponseDTO deleteUserRole(@PathVariable @UUID String id, @RequestHeader("X-UserId") @UUID String idUserLogged){
         return userRoleService.deleteUserRole(id, idUserLogged);
     }
 }
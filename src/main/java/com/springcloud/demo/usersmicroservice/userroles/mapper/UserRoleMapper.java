@@ -4,6 +4,7 @@ import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
 import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
 
 import java.util.Arrays;
 
@@ -18,6 +19,14 @@ public class UserRoleMapper {
                 .build();
     }
 
+    public static UserRoleResponseDTO userRoleViewToUserRoleResponseDTO(UserRoleView userRole){
+        return UserRoleResponseDTO.builder()
+                .id(userRole.id())
+                .role(userRole.role())
+                .createdAt(userRole.createdAt())
+                .build();
+    }
+
     public static UserRole stringToUserRole(String role){
         Roles userRole = Roles.CUSTOMER;
         if(role != null){
@@ -0,0 +1,9 @@
+package com.springcloud.demo.usersmicroservice.userroles.projection;
+
+/**
+ * Result of adding a role to a user
+ *
+ * @param created null when the user does not exist or already has the role
+ */
+public record UserRoleInsertView(boolean userExists, UserRoleView created) {
+}
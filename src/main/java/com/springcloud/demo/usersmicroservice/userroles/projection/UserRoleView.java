@@ -0,0 +1,7 @@
+package com.springcloud.demo.usersmicroservice.userroles.projection;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record UserRoleView(UUID userId, UUID id, String role, LocalDateTime createdAt) {
+}
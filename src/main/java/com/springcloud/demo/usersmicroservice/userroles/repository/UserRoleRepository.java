@@ -1,13 +1,19 @@
 package com.springcloud.demo.usersmicroservice.userroles.repository;
 
 import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
-import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
-public interface UserRoleRepository extends JpaRepository<UserRole, UUID> {
+public interface UserRoleRepository extends JpaRepository<UserRole, UUID>, UserRoleRepositoryCustom {
 
-    Optional<UserRole> findByUserAndRole(User user, String role);
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView(r.user.id, r.id, r.role, r.createdAt) " +
+            "FROM UserRole r WHERE r.user.id IN ?1")
+    List<UserRoleView> findViewsByUserIdIn(Collection<UUID> userIds);
 }
@@ -0,0 +1,21 @@
+package com.springcloud.demo.usersmicroservice.userroles.repository;
+
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleInsertView;
+
+import java.util.UUID;
+
+public interface UserRoleRepositoryCustom {
+
+    /**
+     * Inserts the role and increments the version of the user in one statement on PostgreSQL,
+     * relying on the unique index on (user_id, role). The cached user is soft locked until the transaction completes
+     */
+    UserRoleInsertView insertIfAbsent(UUID userId, String role);
+
+    /**
+     * Plain SQL, a bulk query would drop every cached role. The cached user is soft locked until the transaction completes
+     *
+     * @return 0 when role not exist or belongs to another user
+     */
+    int deleteByIdAndUserId(UUID id, UUID userId);
+}
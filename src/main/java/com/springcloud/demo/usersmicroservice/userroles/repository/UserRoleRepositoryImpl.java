@@ -0,0 +1,88 @@
+package com.springcloud.demo.usersmicroservice.userroles.repository;
+
+import com.springcloud.demo.usersmicroservice.datasource.DatabasePlatform;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleInsertView;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
+import com.springcloud.demo.usersmicroservice.users.cache.UserEntityCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+class UserRoleRepositoryImpl implements UserRoleRepositoryCustom {
+
+    /**
+     * Always returns one row, the role columns are null when the user does not exist or already has the role
+     */
+    private static final String INSERT_ROLE_IF_ABSENT = """
+            WITH target AS (
+                SELECT id FROM users WHERE id = ?
+            ), new_role AS (
+                INSERT INTO user_roles (role, user_id) SELECT ?, id FROM target
+                ON CONFLICT (user_id, role) DO NOTHING
+                RETURNING id, role, user_id, created_at
+            ), new_version AS (
+                UPDATE users SET version = version + 1, last_updated = now() WHERE id IN (SELECT user_id FROM new_role)
+            )
+            SELECT EXISTS (SELECT 1 FROM target) AS user_exists, r.id, r.role, r.user_id, r.created_at
+            FROM (VALUES (1)) AS one LEFT JOIN new_role r ON true
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DatabasePlatform databasePlatform;
+    private final UserEntityCache userEntityCache;
+
+    @Override
+    public UserRoleInsertView insertIfAbsent(UUID userId, String role) {
+        return transactionTemplate.execute(status -> {
+            userEntityCache.lock(userId);
+            return databasePlatform.isPostgres() ? insertIfAbsentInOneStatement(userId, role) : checkThenInsert(userId, role);
+        });
+    }
+
+    private UserRoleInsertView insertIfAbsentInOneStatement(UUID userId, String role) {
+        return jdbcTemplate.queryForObject(INSERT_ROLE_IF_ABSENT, (rs, rowNum) -> new UserRoleInsertView(
+                rs.getBoolean("user_exists"),
+                rs.getObject("id") == null ? null : new UserRoleView(
+                        rs.getObject("user_id", UUID.class),
+                        rs.getObject("id", UUID.class),
+                        rs.getString("role"),
+                        rs.getTimestamp("created_at").toLocalDateTime()
+                )
+        ), userId, role);
+    }
+
+    /**
+     * The schema generated for other databases has the same unique constraint
+     */
+    private UserRoleInsertView checkThenInsert(UUID userId, String role) {
+        Long users = jdbcTemplate.queryForObject("SELECT count(*) FROM users WHERE id = ?", Long.class, userId);
+        if (users == null || users == 0) {
+            return new UserRoleInsertView(false, null);
+        }
+
+        Long roles = jdbcTemplate.queryForObject("SELECT count(*) FROM user_roles WHERE user_id = ? AND role = ?", Long.class, userId, role);
+        if (roles != null && roles > 0) {
+            return new UserRoleInsertView(true, null);
+        }
+
+        UserRoleView created = new UserRoleView(userId, UUID.randomUUID(), role, LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        jdbcTemplate.update("INSERT INTO user_roles (id, role, user_id, created_at) VALUES (?, ?, ?, ?)",
+                created.id(), created.role(), created.userId(), created.createdAt());
+        jdbcTemplate.update("UPDATE users SET version = version + 1, last_updated = ? WHERE id = ?", created.createdAt(), userId);
+        return new UserRoleInsertView(true, created);
+    }
+
+    @Override
+    public int deleteByIdAndUserId(UUID id, UUID userId) {
+        return transactionTemplate.execute(status -> {
+            userEntityCache.lock(userId);
+            return jdbcTemplate.update("DELETE FROM user_roles WHERE id = ? AND user_id = ?", id, userId);
+        });
+    }
+}
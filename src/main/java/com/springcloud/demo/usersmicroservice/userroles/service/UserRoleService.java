@@ -3,55 +3,76 @@ package com.springcloud.demo.usersmicroservice.userroles.service;
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
 import com.springcloud.demo.usersmicroservice.exceptions.ForbiddenException;
 import com.springcloud.demo.usersmicroservice.exceptions.NotFoundException;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics.Phase;
 import com.springcloud.demo.usersmicroservice.userroles.dto.AddRoleDTO;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.mapper.UserRoleMapper;
-import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleInsertView;
 import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
-import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
 import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
 import java.util.UUID;
 
 @Service
+@Timed(value = "users.service", histogram = true)
 @RequiredArgsConstructor
 public class UserRoleService {
 
     private final UserRoleRepository userRoleRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ServiceMetrics serviceMetrics;
 
+    /**
+     * One statement inserts the role unless the user already has it, and tells whether the user exists
+     */
     public UserRoleResponseDTO addUserRole(String userId, AddRoleDTO addRoleDTO) {
+        UUID id = UUID.fromString(userId);
+        String role = UserRoleMapper.stringToUserRole(addRoleDTO.getRole()).getRole();
 
-        User user = userRepository.findById(UUID.fromString(userId)).orElseThrow(()-> new NotFoundException("Not found user with id: " + userId));
+        UserRoleInsertView inserted = serviceMetrics.record("addUserRole", Phase.DB, () -> userRoleRepository.insertIfAbsent(id, role));
 
-        UserRole userRole = UserRoleMapper.stringToUserRole(addRoleDTO.getRole());
-
-        Optional<UserRole> existRole = userRoleRepository.findByUserAndRole(user, userRole.getRole());
-
-        if(existRole.isPresent()){
+        if(!inserted.userExists()){
+            throw new NotFoundException("Not found user with id: " + userId);
+        }
+        if(inserted.created() == null){
             throw new ForbiddenException("User already has same role");
         }
 
-        userRole.setUser(user);
+        eventPublisher.publishEvent(new UserChangedEvent(id));
 
-        userRole = userRoleRepository.save(userRole);
-
-        return UserRoleMapper.userRoleToUserRoleResponseDTO(userRole);
+        return serviceMetrics.record("addUserRole", Phase.MAPPING, () -> UserRoleMapper.userRoleViewToUserRoleResponseDTO(inserted.created()));
     }
 
+    /**
+     * Deleted in one statement restricted to the roles of the logged user,
+     * the role is only looked up when nothing was deleted to tell 404 from 403.
+     * The version of the user is increased in the same transaction, so no one reads the roles without it
+     */
+    @Transactional
     public SimpleResponseDTO deleteUserRole(String id, String idUserLogged) {
-        UserRole userRoleToDelete = userRoleRepository
-                .findById(UUID.fromString(id))
-                .orElseThrow(()-> new NotFoundException("Not found user_role with id: " + id));
+        UUID roleId = UUID.fromString(id);
+        UUID userId = UUID.fromString(idUserLogged);
+
+        int deleted = serviceMetrics.record("deleteUserRole", Phase.DB, () -> userRoleRepository.deleteByIdAndUserId(roleId, userId));
 
-        if(!userRoleToDelete.getUser().getId().toString().equals(idUserLogged)){
-            throw new ForbiddenException("Not have permission to delete another user");
+        if(deleted == 0){
+            if(serviceMetrics.record("deleteUserRole", Phase.DB, () -> userRoleRepository.existsById(roleId))){
+                throw new ForbiddenException("Not have permission to delete another user");
+            }
+            throw new NotFoundException("Not found user_role with id: " + id);
         }
 
-        userRoleRepository.delete(userRoleToDelete);
+        serviceMetrics.record("deleteUserRole", Phase.DB, () -> userRepository.incrementVersion(userId));
+
+        eventPublisher.publishEvent(new UserChangedEvent(userId));
 
         return new SimpleResponseDTO(true);
     }
@@ -0,0 +1,69 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hibernate second level cache on Caffeine through JCache, one cache per region of {@link EntityCacheProperties}
+ */
+@Configuration
+public class EntityCacheConfig {
+
+    /**
+     * Cache managers are shared by URI within the provider, each application context gets its own
+     */
+    private static final AtomicInteger CACHE_MANAGERS = new AtomicInteger();
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(value = "users.entity-cache.enabled", matchIfMissing = true)
+    public CacheManager entityCacheManager(EntityCacheProperties properties, MeterRegistry meterRegistry) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager(
+                URI.create("users-ms-entity-cache-" + CACHE_MANAGERS.incrementAndGet()),
+                EntityCacheConfig.class.getClassLoader()
+        );
+
+        properties.getRegions().forEach((name, region) -> {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(region.getMaximumSize()));
+            configuration.setExpireAfterWrite(OptionalLong.of(region.getExpireAfterWrite().toNanos()));
+            configuration.setStatisticsEnabled(true);
+
+            JCacheMetrics.monitor(meterRegistry, cacheManager.createCache(name, configuration));
+        });
+        return cacheManager;
+    }
+
+    /**
+     * Regions missing from the properties fail the startup instead of being created without bounds
+     */
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(ObjectProvider<CacheManager> entityCacheManager) {
+        return hibernateProperties -> {
+            CacheManager cacheManager = entityCacheManager.getIfAvailable();
+            if (cacheManager == null) {
+                hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+                return;
+            }
+
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+            hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("users.entity-cache")
+public class EntityCacheProperties {
+
+    /**
+     * Hibernate second level cache of users, roles and the roles of each user
+     */
+    boolean enabled = true;
+
+    /**
+     * Size and time to live of each cache region, by region name
+     */
+    Map<String, Region> regions = new LinkedHashMap<>(Map.of(
+            User.CACHE_REGION, new Region(),
+            User.ROLES_CACHE_REGION, new Region(),
+            UserRole.CACHE_REGION, new Region()
+    ));
+
+    /**
+     * How the entries changed by another instance are dropped
+     */
+    Invalidation invalidation = Invalidation.LOCAL;
+
+    @Data
+    public static class Region {
+
+        long maximumSize = 10_000;
+
+        /**
+         * Bounds how long another instance may serve an entry changed here when invalidation is local
+         */
+        Duration expireAfterWrite = Duration.ofMinutes(5);
+    }
+
+    public enum Invalidation {
+        /**
+         * Each instance only drops the entries changed by itself
+         */
+        LOCAL,
+        /**
+         * Changes are broadcast to the other instances with PostgreSQL NOTIFY
+         */
+        POSTGRES_NOTIFY
+    }
+}
@@ -0,0 +1,128 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Sends the {@link UserChangedEvent} published on this instance to the others with PostgreSQL NOTIFY, and publishes
+ * the ones sent by the others as remote events, so every instance drops the user from its caches.
+ * <p>
+ * Notifications are received on a connection of its own, outside of the pool. The ones sent while it is down
+ * are lost, so the whole entity cache is dropped every time it connects.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "users.entity-cache.invalidation", havingValue = "postgres-notify")
+@RequiredArgsConstructor
+public class PostgresCacheInvalidation implements SmartLifecycle {
+
+    static final String CHANNEL = "users_changed";
+
+    private static final int POLL_MILLIS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserEntityCache userEntityCache;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile boolean running;
+    private Thread listener;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.remote()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, instanceId + ":" + event.userId());
+        } catch (DataAccessException e) {
+            // the change is committed, the other instances serve the old user until their entries expire
+            log.warn("Unable to notify change of user {}", event.userId(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listener = Thread.ofPlatform().name("users-cache-invalidation").daemon().start(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listener.interrupt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSourceProperties.initializeDataSourceBuilder().type(SimpleDriverDataSource.class).build().getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                userEntityCache.evictAll();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            try {
+                                received(notification.getParameter());
+                            } catch (RuntimeException e) {
+                                // a bad payload or listener must not stop the invalidation of the next users
+                                log.error("Unable to handle change notification {}", notification.getParameter(), e);
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("Listening to {} failed, connecting again", CHANNEL, e);
+                    sleep();
+                }
+            }
+        }
+    }
+
+    private void received(String payload) {
+        int separator = payload.indexOf(':');
+        if (separator < 0 || payload.substring(0, separator).equals(instanceId)) {
+            return;
+        }
+
+        eventPublisher.publishEvent(new UserChangedEvent(UUID.fromString(payload.substring(separator + 1)), true));
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
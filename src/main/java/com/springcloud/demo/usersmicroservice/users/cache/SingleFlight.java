@@ -0,0 +1,93 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Shares one load between the concurrent callers of the same key. The first caller loads on its own thread,
+ * the others wait for its result or its exception, up to the timeout.
+ * <p>
+ * Nothing is kept once the load is done, a caller arriving after it starts a new one. Callers get the same instance,
+ * so it must not be changed by any of them.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final SingleFlightProperties properties;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter loads;
+    private final Counter collapsed;
+    private final Counter timeouts;
+
+    public SingleFlight(String name, SingleFlightProperties properties, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.properties = properties;
+        this.loads = counter(meterRegistry, name, "load");
+        this.collapsed = counter(meterRegistry, name, "collapsed");
+        this.timeouts = counter(meterRegistry, name, "timeout");
+
+        Gauge.builder("users.single.flight.in.flight", inFlight, Map::size).tag("name", name).register(meterRegistry);
+    }
+
+    /**
+     * @throws ServiceUnavailableException when the load of another caller does not finish within the timeout
+     */
+    public V load(K key, Supplier<V> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> shared = inFlight.putIfAbsent(key, load);
+        if (shared != null) {
+            collapsed.increment();
+            return await(shared);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.get();
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private V await(CompletableFuture<V> shared) {
+        try {
+            return shared.get(properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new ServiceUnavailableException("Timed out waiting for " + name + " load in progress", properties.getTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted waiting for " + name + " load in progress", properties.getTimeout());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("users.single.flight").tag("name", name).tag("result", result).register(meterRegistry);
+    }
+}
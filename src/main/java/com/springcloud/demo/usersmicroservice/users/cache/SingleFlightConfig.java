@@ -0,0 +1,28 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * One {@link SingleFlight} per lookup hit by login storms, injected by their generic types
+ */
+@Configuration
+public class SingleFlightConfig {
+
+    @Bean
+    public SingleFlight<UUID, Optional<User>> userByIdSingleFlight(SingleFlightProperties properties, MeterRegistry meterRegistry) {
+        return new SingleFlight<>("users.by.id", properties, meterRegistry);
+    }
+
+    @Bean
+    public SingleFlight<UserAuthCache.EmailLoad, List<UserWithRoleView>> userByEmailSingleFlight(SingleFlightProperties properties, MeterRegistry meterRegistry) {
+        return new SingleFlight<>("users.by.email", properties, meterRegistry);
+    }
+}
@@ -0,0 +1,21 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.single-flight")
+public class SingleFlightProperties {
+
+    /**
+     * Concurrent lookups of the same user by id or by email share one database load
+     */
+    boolean enabled = true;
+
+    /**
+     * Max time a caller waits for the load started by another one, then it fails with 503
+     */
+    Duration timeout = Duration.ofSeconds(5);
+}
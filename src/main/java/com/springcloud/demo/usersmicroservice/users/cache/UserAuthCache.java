@@ -0,0 +1,145 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.springcloud.demo.usersmicroservice.datasource.ReplicaRoutingDataSource;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import com.springcloud.demo.usersmicroservice.users.mapper.UserMapper;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory cache of users used on login, keyed by normalized email.
+ * Entries are dropped when a {@link UserChangedEvent} is published for the user, found by id in an index of the
+ * email each cached user was loaded with, so a changed email drops the entry of the old one.
+ * <p>
+ * Loads run on the application task executor instead of inside the map compute, which holds a monitor
+ * and would pin the carrier of a virtual thread while waiting for the database.
+ * Concurrent loads of the same email share one query, also when the cache is disabled. Only loads started between
+ * the same changes do, a load started after a change never gets the result of a query started before it.
+ */
+@Component
+public class UserAuthCache {
+
+    private final UserRepository userRepository;
+    private final UserAuthCacheProperties properties;
+    private final SingleFlight<EmailLoad, List<UserWithRoleView>> singleFlight;
+    private final AsyncLoadingCache<String, UserAuthResponseDTO> cache;
+    private final Map<UUID, String> emails = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    private final Counter invalidations;
+
+    /**
+     * Key of the shared queries, the email and the count of changes when the load started
+     */
+    public record EmailLoad(String email, long changes) {
+    }
+
+    public UserAuthCache(
+            UserRepository userRepository,
+            UserAuthCacheProperties properties,
+            SingleFlight<EmailLoad, List<UserWithRoleView>> singleFlight,
+            MeterRegistry meterRegistry,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor
+    ) {
+        this.userRepository = userRepository;
+        this.properties = properties;
+        this.singleFlight = singleFlight;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .refreshAfterWrite(properties.getRefreshAfterWrite())
+                .recordStats()
+                .evictionListener((String email, UserAuthResponseDTO user, RemovalCause cause) -> {
+                    if (user != null) {
+                        emails.remove(user.getId(), email);
+                    }
+                })
+                .executor(executor)
+                .buildAsync(this::load);
+        this.invalidations = Counter.builder("users.auth.cache.invalidations").register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users.auth");
+    }
+
+    public Optional<UserAuthResponseDTO> get(String email) {
+        String key = normalize(email);
+
+        if (!properties.isEnabled()) {
+            return Optional.ofNullable(load(key));
+        }
+
+        try {
+            return Optional.ofNullable(cache.get(key).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        changes.incrementAndGet();
+
+        String email = emails.remove(event.userId());
+        if (email != null) {
+            // also drops a load or refresh in progress, its result is not cached
+            cache.synchronous().invalidate(email);
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Returns null when user not exist, so missing emails are never cached.
+     * Read from the primary, a password changed but not yet replicated would be cached with its old hash.
+     * <p>
+     * A change of the user before it is in the index can not find the entry, when any user changed while
+     * querying the user is queried again. Later changes find it in the index and drop it.
+     */
+    private UserAuthResponseDTO load(String email) {
+        long started = changes.get();
+        List<UserWithRoleView> rows = query(email, started);
+
+        if (!rows.isEmpty() && properties.isEnabled()) {
+            emails.put(rows.getFirst().id(), email);
+            long current = changes.get();
+            if (current != started) {
+                rows = query(email, current);
+                rows.stream().findFirst().ifPresent(row -> emails.put(row.id(), email));
+            }
+        }
+
+        return rows.isEmpty() ? null : UserMapper.userWithRoleViewsToUserAuthResponseDto(rows);
+    }
+
+    private List<UserWithRoleView> query(String email, long started) {
+        try (ReplicaRoutingDataSource.Scope primary = ReplicaRoutingDataSource.usePrimary()) {
+            return singleFlight.load(new EmailLoad(email, started), () -> userRepository.findViewByEmailIgnoreCase(email));
+        }
+    }
+
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,25 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.auth-cache")
+public class UserAuthCacheProperties {
+
+    boolean enabled = true;
+
+    long maximumSize = 10_000;
+
+    /**
+     * Max time an entry is served before it has to be loaded again from database
+     */
+    Duration expireAfterWrite = Duration.ofMinutes(5);
+
+    /**
+     * Entries older than this are still served but reloaded in background
+     */
+    Duration refreshAfterWrite = Duration.ofSeconds(30);
+}
@@ -0,0 +1,83 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Cache;
+import org.hibernate.cache.spi.access.CollectionDataAccess;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metamodel.spi.MappingMetamodelImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Keeps the users and roles collections of the Hibernate second level cache in line with the writes Hibernate does
+ * not see: role and delete statements run as plain SQL.
+ * <p>
+ * Those writes {@link #lock(UUID)} the user before running, as Hibernate does for its own updates. A load started
+ * before the write can not put the previous user back once it is committed, an eviction after the commit would
+ * let it. Changes of other instances, received as remote {@link UserChangedEvent}, are evicted.
+ * <p>
+ * Role entities are not dropped, they never change and are only reached through the collection.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserEntityCache {
+
+    static final String ROLES = User.class.getName() + ".roles";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.remote()) {
+            evict(event.userId());
+        }
+    }
+
+    /**
+     * Soft locks the user and its roles collection until the current transaction completes, loads started before
+     * the transaction completes are not cached. Called in the transaction of the write, before it
+     */
+    public void lock(UUID userId) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        SessionFactoryImplementor factory = session.getFactory();
+        MappingMetamodelImplementor metamodel = factory.getMappingMetamodel();
+
+        EntityPersister users = metamodel.getEntityDescriptor(User.class);
+        if (users.canWriteToCache()) {
+            EntityDataAccess access = users.getCacheAccessStrategy();
+            Object key = access.generateCacheKey(userId, users, factory, session.getTenantIdentifier());
+            SoftLock lock = access.lockItem(session, key, null);
+            session.getActionQueue().registerProcess((success, completed) -> access.unlockItem(completed, key, lock));
+        }
+
+        CollectionPersister roles = metamodel.getCollectionDescriptor(ROLES);
+        if (roles.hasCache()) {
+            CollectionDataAccess access = roles.getCacheAccessStrategy();
+            Object key = access.generateCacheKey(userId, roles, factory, session.getTenantIdentifier());
+            SoftLock lock = access.lockItem(session, key, null);
+            session.getActionQueue().registerProcess((success, completed) -> access.unlockItem(completed, key, lock));
+        }
+    }
+
+    public void evict(UUID userId) {
+        Cache cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        cache.evictEntityData(User.class, userId);
+        cache.evictCollectionData(ROLES, userId);
+    }
+
+    public void evictAll() {
+        entityManagerFactory.getCache().evictAll();
+    }
+}
@@ -0,0 +1,115 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.UncheckedIOException;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * UTF-8 JSON of the users read by id and by email, encoded once with the ObjectMapper of the message converters
+ * and then written as is.
+ * <p>
+ * Users are keyed by id and only served when the version matches the one just read, a changed user is never written
+ * from an older entry, and are dropped when a {@link UserChangedEvent} is published for the user.
+ * Auth users are keyed by the instance handed out by {@link UserAuthCache}, held weakly, so an entry is served as long
+ * as the auth cache serves the user it was encoded from and is collected once that user is dropped.
+ */
+@Component
+public class UserJsonCache {
+
+    /**
+     * JSON of a user and the version it was encoded from, sent as ETag
+     */
+    public record Json(long version, byte[] bytes) {
+    }
+
+    private final UserJsonCacheProperties properties;
+    private final UserAuthCacheProperties authCacheProperties;
+    private final ObjectWriter userWriter;
+    private final ObjectWriter authWriter;
+    private final Cache<UUID, Json> users;
+    private final Cache<UserAuthResponseDTO, byte[]> authUsers;
+
+    public UserJsonCache(
+            UserJsonCacheProperties properties,
+            UserAuthCacheProperties authCacheProperties,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry
+    ) {
+        this.properties = properties;
+        this.authCacheProperties = authCacheProperties;
+        this.userWriter = objectMapper.writerFor(UserResponseDTO.class);
+        this.authWriter = objectMapper.writerFor(UserAuthResponseDTO.class);
+        this.users = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumSize().toBytes())
+                .<UUID, Json>weigher((id, json) -> json.bytes().length)
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        this.authUsers = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumWeight(properties.getMaximumSize().toBytes())
+                .<UserAuthResponseDTO, byte[]>weigher((key, json) -> json.length)
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users.json");
+        CaffeineCacheMetrics.monitor(meterRegistry, authUsers, "users.auth.json");
+    }
+
+    /**
+     * @param version version of the user the caller has just read
+     * @param user    mapped only when there is no JSON of this version
+     */
+    public Json user(UUID id, long version, Supplier<UserResponseDTO> user) {
+        if (properties.isEnabled()) {
+            Json cached = users.getIfPresent(id);
+            if (cached != null && cached.version() == version) {
+                return cached;
+            }
+        }
+
+        UserResponseDTO response = user.get();
+        Json json = new Json(response.getVersion(), encode(userWriter, response));
+        if (properties.isEnabled()) {
+            users.put(id, json);
+        }
+        return json;
+    }
+
+    /**
+     * Without the auth cache each lookup returns a new instance, which would never be found again
+     */
+    public byte[] authUser(UserAuthResponseDTO user) {
+        if (!properties.isEnabled() || !authCacheProperties.isEnabled()) {
+            return encode(authWriter, user);
+        }
+        return authUsers.get(user, key -> encode(authWriter, key));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        users.invalidate(event.userId());
+    }
+
+    private static byte[] encode(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
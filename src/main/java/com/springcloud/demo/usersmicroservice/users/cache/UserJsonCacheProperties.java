@@ -0,0 +1,24 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.json-cache")
+public class UserJsonCacheProperties {
+
+    /**
+     * Responses of GET by id and by email written from the JSON encoded once, instead of serialized on each request
+     */
+    boolean enabled = true;
+
+    /**
+     * Bytes of JSON kept by each cache, by id and by email
+     */
+    DataSize maximumSize = DataSize.ofMegabytes(32);
+
+    Duration expireAfterAccess = Duration.ofMinutes(10);
+}
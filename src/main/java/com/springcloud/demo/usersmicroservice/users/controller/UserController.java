@@ -3,8 +3,13 @@ package com.springcloud.demo.usersmicroservice.users.controller;
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
 import com.springcloud.demo.usersmicroservice.exceptions.ForbiddenException;
 import com.springcloud.demo.usersmicroservice.exceptions.dto.ErrorResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.cache.UserJsonCache;
 import com.springcloud.demo.usersmicroservice.users.dto.*;
+import com.springcloud.demo.usersmicroservice.users.exporter.UserExportService;
+import com.springcloud.demo.usersmicroservice.users.importer.UserImportProperties;
+import com.springcloud.demo.usersmicroservice.users.importer.UserImportService;
 import com.springcloud.demo.usersmicroservice.users.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,14 +19,30 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.validator.constraints.UUID;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/users")
@@ -29,17 +50,146 @@ import java.util.List;
 
 public class UserController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final UserImportProperties userImportProperties;
+    private final UserExportService userExportService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @Operation(security = {})
     @ApiResponses({
             @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
-            @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
+            @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
+            @ApiResponse(responseCode = "503", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
+    })
+    CompletableFuture<ResponseEntity<UserResponseDTO>> create(@Valid @RequestBody CreateUserDTO createUserDTO) {
+        return userService.create(createUserDTO)
+                .thenApply(user -> ResponseEntity.status(HttpStatus.CREATED).eTag(UserETags.of(user.getVersion())).body(user));
+    }
+
+    /**
+     * Streams one NDJSON result per user line, each batch is written as soon as it is saved.
+     * Lines are validated one by one, an invalid line does not stop the import.
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, UserImportService.TEXT_CSV_VALUE}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = UserImportResultDTO.class)))
+    })
+    ResponseEntity<ResponseBodyEmitter> importUsers(HttpServletRequest request) throws IOException {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(userImportProperties.getTimeout().toMillis());
+
+        userImportService
+                .importUsers(
+                        new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8),
+                        MediaType.parseMediaType(request.getContentType()),
+                        results -> send(emitter, results)
+                )
+                .whenComplete((done, e) -> {
+                    if (e != null) {
+                        emitter.completeWithError(e);
+                    } else {
+                        emitter.complete();
+                    }
+                });
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    private void send(ResponseBodyEmitter emitter, List<UserImportResultDTO> results) {
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (UserImportResultDTO result : results) {
+                lines.write(objectMapper.writeValueAsBytes(result));
+                lines.write('\n');
+            }
+            emitter.send(lines.toByteArray());
+        } catch (IOException e) {
+            // the client is gone, stops the import
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * All users with their roles, one per line, written on the request thread as they are read from the database.
+     * The database connection is held until the last user is written.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponses({
+            @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
+    })
+    void exportNdjson(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime updatedSince,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response
+    ) throws IOException {
+        export(updatedSince, false, MediaType.APPLICATION_NDJSON_VALUE, acceptEncoding, response);
+    }
+
+    @GetMapping(value = "/export", produces = UserImportService.TEXT_CSV_VALUE)
+    @ApiResponses({
+            @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
     })
-    UserResponseDTO create(@Valid @RequestBody CreateUserDTO createUserDTO) {
-        return userService.create(createUserDTO);
+    void exportCsv(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime updatedSince,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response
+    ) throws IOException {
+        export(updatedSince, true, UserImportService.TEXT_CSV_VALUE + ";charset=UTF-8", acceptEncoding, response);
+    }
+
+    private void export(LocalDateTime updatedSince, boolean csv, String contentType, String acceptEncoding, HttpServletResponse response) throws IOException {
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+        userExportService.export(updatedSince, csv, out);
+    }
+
+    /**
+     * The gzip coding, or * when gzip is not listed, with a quality above 0. Other codings are not matched,
+     * x-gzip included
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                return quality(parts) > 0;
+            }
+            if (name.equals("*")) {
+                any = quality(parts) > 0;
+            }
+        }
+        return any;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
     }
 
     @GetMapping
@@ -47,28 +197,49 @@ public class UserController {
     @ApiResponses({
             @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
     })
-    List<UserResponseDTO> findAll(@Valid @ModelAttribute UserFiltersDTO userFiltersDTO, HttpServletRequest request){
+    ResponseEntity<List<UserResponseDTO>> findAll(@Valid @ModelAttribute UserFiltersDTO userFiltersDTO, HttpServletRequest request){
         String traceId = request.getHeader("X-Amzn-Trace-Id");
         System.out.println("X-Amzn-Trace-Id: (Controller)" + traceId);
-        return userService.findAll(userFiltersDTO);
+        UserPageDTO userPage = userService.findAll(userFiltersDTO);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(userPage.getNextCursor() != null){
+            response.header(NEXT_CURSOR_HEADER, userPage.getNextCursor());
+        }
+        if(userPage.getTotal() != null){
+            response.header(TOTAL_COUNT_HEADER, userPage.getTotal().toString());
+        }
+        return response.body(userPage.getUsers());
     }
 
-    @GetMapping("/{id}")
-    @ResponseStatus(HttpStatus.OK)
+    /**
+     * With If-None-Match the version is checked first, an unchanged user is answered with 304 without loading it.
+     * The body is the JSON cached for the version of the user, written as is.
+     * No @ResponseStatus here, it would overwrite the 304 set by checkNotModified.
+     */
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = UserResponseDTO.class))),
+            @ApiResponse(responseCode = "304", content = @Content),
             @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
     })
-    UserResponseDTO findById(@PathVariable @UUID(message = "uuid not valid") String id){
-        return userService.findById(id);
+    ResponseEntity<byte[]> findById(@PathVariable @UUID(message = "uuid not valid") String id, WebRequest request){
+        if(request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(UserETags.of(userService.findVersion(id)))){
+            return null;
+        }
+
+        UserJsonCache.Json user = userService.findJsonById(id);
+        return ResponseEntity.ok().eTag(UserETags.of(user.version())).contentType(MediaType.APPLICATION_JSON).body(user.bytes());
     }
 
-    @GetMapping("/email/{email}")
-    @ResponseStatus(HttpStatus.OK)
+    @GetMapping(value = "/email/{email}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = UserAuthResponseDTO.class))),
             @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class)))
     })
-    UserAuthResponseDTO findByEmailToAuth(@PathVariable @Email String email){
-        return userService.findByEmailToAuth(email);
+    ResponseEntity<byte[]> findByEmailToAuth(@PathVariable @Email String email){
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(userService.findJsonByEmailToAuth(email));
     }
 
     @PatchMapping("/{id}")
@@ -76,12 +247,20 @@ public class UserController {
     @ApiResponses({
             @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
             @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
+            @ApiResponse(responseCode = "412", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
+            @ApiResponse(responseCode = "503", content = @Content(schema = @Schema(implementation = ErrorResponseDTO.class))),
     })
-    UserResponseDTO update(@Valid @RequestBody UpdateUserDTO updateUserDTO, @PathVariable @UUID String id, @RequestHeader("X-UserId") String idUserLogged){
+    CompletableFuture<ResponseEntity<UserResponseDTO>> update(
+            @Valid @RequestBody UpdateUserDTO updateUserDTO,
+            @PathVariable @UUID String id,
+            @RequestHeader("X-UserId") String idUserLogged,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ){
         if(!idUserLogged.equals(id)){
             throw new ForbiddenException("Not have permission to update another user");
         }
-        return userService.update(updateUserDTO, id);
+        return userService.update(updateUserDTO, id, UserETags.parseIfMatch(ifMatch))
+                .thenApply(user -> ResponseEntity.ok().eTag(UserETags.of(user.getVersion())).body(user));
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,33 @@
+package com.springcloud.demo.usersmicroservice.users.controller;
+
+import com.springcloud.demo.usersmicroservice.exceptions.PreconditionFailedException;
+
+/**
+ * Strong ETags of a user built from its version, "3" for version 3
+ */
+class UserETags {
+
+    static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @return version required by the If-Match header, null when absent or "*"
+     * @throws PreconditionFailedException when the header is not the strong ETag of a version, it can not match
+     */
+    static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String etag = ifMatch.trim();
+        if (etag.length() > 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            try {
+                return Long.parseLong(etag.substring(1, etag.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // falls through to the precondition failure below
+            }
+        }
+        throw new PreconditionFailedException("If-Match does not match the current version of the user");
+    }
+}
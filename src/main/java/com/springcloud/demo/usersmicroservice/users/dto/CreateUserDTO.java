@@ -3,6 +3,7 @@ package com.springcloud.demo.usersmicroservice.users.dto;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,10 +13,12 @@ import lombok.NoArgsConstructor;
 @Data
 public class CreateUserDTO {
     @NotBlank
+    @Size(max = 100)
     String name;
 
     @NotBlank
     @Email
+    @Size(max = 100)
     String email;
 
     @NotBlank
@@ -14,4 +14,14 @@ public class UserFiltersDTO {
     Integer limit;
 
     String q;
+
+    /**
+     * Value of X-Next-Cursor header of previous page. When present page is ignored
+     */
+    String cursor;
+
+    /**
+     * Return the total number of users in X-Total-Count header. Estimated when there is no term to search
+     */
+    Boolean includeTotal;
 }
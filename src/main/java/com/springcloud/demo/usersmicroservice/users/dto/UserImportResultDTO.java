@@ -0,0 +1,31 @@
+package com.springcloud.demo.usersmicroservice.users.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Result of one line of a bulk import
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportResultDTO {
+    private long line;
+    private int status;
+
+    /**
+     * Only present when the user was created
+     */
+    private UUID id;
+
+    private String message;
+    private List<String> errors;
+}
@@ -0,0 +1,26 @@
+package com.springcloud.demo.usersmicroservice.users.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPageDTO {
+    private List<UserResponseDTO> users;
+
+    /**
+     * Cursor to request the next page, null when there are no more users
+     */
+    private String nextCursor;
+
+    /**
+     * Only present when requested with includeTotal
+     */
+    private Long total;
+}
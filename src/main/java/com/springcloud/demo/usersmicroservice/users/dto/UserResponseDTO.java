@@ -1,5 +1,6 @@
 package com.springcloud.demo.usersmicroservice.users.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -21,4 +22,10 @@ public class UserResponseDTO {
     private List<UserRoleResponseDTO> roles;
     private LocalDateTime createdAt;
     private LocalDateTime lastUpdated;
+
+    /**
+     * Sent as the ETag header, null on list responses
+     */
+    @JsonIgnore
+    private Long version;
 }
@@ -0,0 +1,15 @@
+package com.springcloud.demo.usersmicroservice.users.event;
+
+import java.util.UUID;
+
+/**
+ * Published every time a user or one of its roles is modified or deleted
+ *
+ * @param remote the change was made by another instance, only its caches on this instance are left to drop
+ */
+public record UserChangedEvent(UUID userId, boolean remote) {
+
+    public UserChangedEvent(UUID userId) {
+        this(userId, false);
+    }
+}
@@ -0,0 +1,14 @@
+package com.springcloud.demo.usersmicroservice.users.exporter;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties("users.export")
+public class UserExportProperties {
+
+    /**
+     * Rows read from the database at a time, only these are held in memory
+     */
+    private int fetchSize = 1000;
+}
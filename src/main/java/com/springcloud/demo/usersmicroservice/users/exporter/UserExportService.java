@@ -0,0 +1,127 @@
+package com.springcloud.demo.usersmicroservice.users.exporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * Writes all users with their roles as NDJSON or CSV straight from the database cursor, no list of users is built
+ * so memory use does not depend on the number of users.
+ * <p>
+ * NDJSON lines have the fields of the user resource. CSV has a header line and the role names of each user
+ * separated by ';'.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserExportService {
+
+    private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+            .addColumn("id")
+            .addColumn("name")
+            .addColumn("email")
+            .addColumn("createdAt")
+            .addColumn("lastUpdated")
+            .addArrayColumn("roles", ";")
+            .setUseHeader(true)
+            .build();
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final UserExportProperties properties;
+    // without the strict check values longer than 24 characters, as every id, are always quoted
+    private final CsvMapper csvMapper = CsvMapper.builder().enable(CsvGenerator.Feature.STRICT_CHECK_FOR_QUOTING).build();
+
+    /**
+     * @param updatedSince only users changed from then on, role changes included, all when null
+     * @param out closed once the last user is written
+     */
+    public void export(LocalDateTime updatedSince, boolean csv, OutputStream out) throws IOException {
+        try (JsonGenerator generator = csv ? csvGenerator(out) : ndjsonGenerator(out)) {
+            UUID[] current = new UUID[1];
+
+            try {
+                userRepository.forEachWithRoles(updatedSince, properties.getFetchSize(), row -> {
+                    try {
+                        if (!row.id().equals(current[0])) {
+                            if (current[0] != null) {
+                                writeUserEnd(generator, csv);
+                            }
+                            writeUserStart(generator, row);
+                            current[0] = row.id();
+                        }
+                        if (row.roleId() != null) {
+                            writeRole(generator, row, csv);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            if (current[0] != null) {
+                writeUserEnd(generator, csv);
+            }
+        }
+    }
+
+    private JsonGenerator ndjsonGenerator(OutputStream out) throws IOException {
+        // lines are ended by writeUserEnd, the default separator would start the next one with a space
+        return objectMapper.getFactory().createGenerator(out).setRootValueSeparator(null);
+    }
+
+    private JsonGenerator csvGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = csvMapper.getFactory().createGenerator(out);
+        generator.setSchema(CSV_SCHEMA);
+        return generator;
+    }
+
+    private static void writeUserStart(JsonGenerator generator, UserWithRoleView row) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", row.id().toString());
+        generator.writeStringField("name", row.name());
+        generator.writeStringField("email", row.email());
+        generator.writeStringField("createdAt", format(row.createdAt()));
+        generator.writeStringField("lastUpdated", format(row.lastUpdated()));
+        generator.writeArrayFieldStart("roles");
+    }
+
+    private static void writeRole(JsonGenerator generator, UserWithRoleView row, boolean csv) throws IOException {
+        if (csv) {
+            generator.writeString(row.role());
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("id", row.roleId().toString());
+        generator.writeStringField("role", row.role());
+        generator.writeStringField("createdAt", format(row.roleCreatedAt()));
+        generator.writeEndObject();
+    }
+
+    private static void writeUserEnd(JsonGenerator generator, boolean csv) throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+        if (!csv) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    private static String format(LocalDateTime dateTime) {
+        return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(dateTime);
+    }
+}
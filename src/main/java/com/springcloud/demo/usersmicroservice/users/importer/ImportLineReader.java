@@ -0,0 +1,75 @@
+package com.springcloud.demo.usersmicroservice.users.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the lines of an import body like {@link java.io.BufferedReader#readLine()}, but holds at most
+ * maxLength characters of a line. The rest of a longer line is skipped and the line is reported as too long,
+ * so a body without line breaks does not fill the memory.
+ */
+class ImportLineReader {
+
+    private final Reader reader;
+    private final int maxLength;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+    private boolean tooLong;
+
+    ImportLineReader(Reader reader, int maxLength) {
+        this.reader = reader;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return the line without its terminator, cut at maxLength characters. Null at the end of the body
+     */
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        boolean read = false;
+        tooLong = false;
+
+        while (fill()) {
+            char c = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+
+            read = true;
+            if (c == '\n' || c == '\r') {
+                skipLineFeed = c == '\r';
+                return line.toString();
+            }
+
+            if (line.length() < maxLength) {
+                line.append(c);
+            } else {
+                tooLong = true;
+            }
+        }
+
+        return read ? line.toString() : null;
+    }
+
+    /**
+     * @return true when the last line read had more than maxLength characters
+     */
+    boolean isTooLong() {
+        return tooLong;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        return limit > 0;
+    }
+}
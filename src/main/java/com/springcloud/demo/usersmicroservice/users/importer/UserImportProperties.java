@@ -0,0 +1,33 @@
+package com.springcloud.demo.usersmicroservice.users.importer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("users.import")
+public class UserImportProperties {
+
+    /**
+     * Lines hashed and inserted together, only one batch is held in memory
+     */
+    private int batchSize = 500;
+
+    /**
+     * Characters of one line, a longer line is rejected with 413 and skipped without being held in memory
+     */
+    private int maxLineLength = 8192;
+
+    /**
+     * Max time of an import request, the servlet container default would cut long imports
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Imports running at the same time, each on its own thread. More are rejected with 503
+     */
+    private int maxConcurrent = 2;
+
+    private Duration retryAfter = Duration.ofSeconds(30);
+}
@@ -0,0 +1,251 @@
+package com.springcloud.demo.usersmicroservice.users.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics.Phase;
+import com.springcloud.demo.usersmicroservice.password.PasswordHasher;
+import com.springcloud.demo.usersmicroservice.userroles.mapper.UserRoleMapper;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserImportResultDTO;
+import com.springcloud.demo.usersmicroservice.users.mapper.UserMapper;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Creates users from NDJSON, or CSV with a header line, one user per line.
+ * <p>
+ * Lines are read in batches: the valid ones are hashed in parallel on the password hasher pool and inserted with
+ * their role in one round trip, then the results of the batch are handed over before the next batch is read,
+ * so memory does not grow with the size of the import. Lines longer than the max line length are rejected
+ * without being held, a CSV header too long fails the import.
+ * <p>
+ * Imports run for minutes, so they have their own few threads instead of the application task executor that
+ * completes logins and writes. When all are busy a new import fails fast with {@link ServiceUnavailableException}.
+ */
+@Service
+public class UserImportService implements DisposableBean {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final Set<String> CSV_COLUMNS = Set.of("name", "email", "password", "role");
+
+    private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final Validator validator;
+    private final ServiceMetrics serviceMetrics;
+    private final UserImportProperties properties;
+    private final ExecutorService executor;
+    private final ObjectReader jsonReader;
+    private final CsvMapper csvMapper = new CsvMapper();
+
+    public UserImportService(
+            UserRepository userRepository,
+            PasswordHasher passwordHasher,
+            Validator validator,
+            ServiceMetrics serviceMetrics,
+            UserImportProperties properties,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry
+    ) {
+        this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.validator = validator;
+        this.serviceMetrics = serviceMetrics;
+        this.properties = properties;
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, new ThreadPoolExecutor(
+                properties.getMaxConcurrent(),
+                properties.getMaxConcurrent(),
+                0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(),
+                Thread.ofPlatform().name("user-import-", 1).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        ), "users.import");
+        this.jsonReader = objectMapper.readerFor(CreateUserDTO.class);
+    }
+
+    private record ImportLine(long line, CreateUserDTO user, String role, UserImportResultDTO rejected) {
+    }
+
+    /**
+     * Runs the import on a thread of the import pool
+     *
+     * @param results called with the results of each batch, in the order of the lines
+     * @return completes when the body is read to the end
+     * @throws ServiceUnavailableException when the max concurrent imports are running
+     */
+    public CompletableFuture<Void> importUsers(Reader body, MediaType contentType, Consumer<List<UserImportResultDTO>> results) {
+        boolean csv = contentType.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE));
+
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    importUsers(new ImportLineReader(body, properties.getMaxLineLength()), csv, results);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("Too many imports in progress, try again later", properties.getRetryAfter());
+        }
+    }
+
+    private void importUsers(ImportLineReader reader, boolean csv, Consumer<List<UserImportResultDTO>> results) throws IOException {
+        ObjectReader lineReader = csv ? null : jsonReader;
+        List<ImportLine> batch = new ArrayList<>(properties.getBatchSize());
+        long number = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (reader.isTooLong()) {
+                UserImportResultDTO tooLong = UserImportResultDTO.builder()
+                        .line(number)
+                        .status(HttpStatus.CONTENT_TOO_LARGE.value())
+                        .message("Line too long, max " + properties.getMaxLineLength() + " characters")
+                        .build();
+                if (lineReader == null) {
+                    results.accept(List.of(tooLong));
+                    return;
+                }
+                batch.add(new ImportLine(number, null, null, tooLong));
+            } else if (line.isBlank()) {
+                continue;
+            } else if (lineReader == null) {
+                try {
+                    lineReader = csvReader(line);
+                } catch (BadRequestException e) {
+                    results.accept(List.of(rejected(number, e.getMessage(), null)));
+                    return;
+                }
+                continue;
+            } else {
+                batch.add(parse(number, line, lineReader));
+            }
+
+            if (batch.size() == properties.getBatchSize()) {
+                results.accept(importBatch(batch));
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            results.accept(importBatch(batch));
+        }
+    }
+
+    /**
+     * Reads the lines after the header as records with the columns of the header
+     */
+    private ObjectReader csvReader(String header) throws IOException {
+        CsvSchema.Builder schema = CsvSchema.builder().setNullValue("");
+        List<String> unknown = new ArrayList<>();
+
+        for (String column : csvMapper.readerFor(String[].class).with(CsvSchema.emptySchema()).<String[]>readValue(header)) {
+            String name = column.trim();
+            if (!CSV_COLUMNS.contains(name)) {
+                unknown.add(name);
+            }
+            schema.addColumn(name);
+        }
+
+        if (!unknown.isEmpty()) {
+            throw new BadRequestException("Columns not valid " + unknown + ". Valid columns " + new TreeSet<>(CSV_COLUMNS));
+        }
+        return csvMapper.readerFor(CreateUserDTO.class).with(schema.build()).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    private ImportLine parse(long number, String line, ObjectReader lineReader) {
+        CreateUserDTO user;
+        try {
+            user = lineReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return new ImportLine(number, null, null, rejected(number, "Line not valid: " + e.getOriginalMessage(), null));
+        }
+
+        if (user == null) {
+            return new ImportLine(number, null, null, rejected(number, "Line not valid: not a user", null));
+        }
+
+        List<String> errors = validator.validate(user)
+                .stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .toList();
+        if (!errors.isEmpty()) {
+            return new ImportLine(number, null, null, rejected(number, null, errors));
+        }
+
+        try {
+            return new ImportLine(number, user, UserRoleMapper.stringToUserRole(user.getRole()).getRole(), null);
+        } catch (BadRequestException e) {
+            return new ImportLine(number, null, null, rejected(number, e.getMessage(), null));
+        }
+    }
+
+    private List<UserImportResultDTO> importBatch(List<ImportLine> batch) {
+        List<ImportLine> valid = batch.stream().filter(line -> line.rejected() == null).toList();
+
+        List<String> passwords = serviceMetrics.record("import", Phase.HASHING, () ->
+                passwordHasher.encodeAll(valid.stream().map(line -> line.user().getPassword()).toList()));
+
+        Map<ImportLine, User> users = new IdentityHashMap<>();
+        for (int i = 0; i < valid.size(); i++) {
+            ImportLine line = valid.get(i);
+            User user = UserMapper.createUserDtoToUser(line.user());
+            user.setId(UUID.randomUUID());
+            user.setPassword(passwords.get(i));
+            user.setRoles(List.of(UserRole.builder().id(UUID.randomUUID()).role(line.role()).user(user).build()));
+            users.put(line, user);
+        }
+
+        Set<UUID> inserted = serviceMetrics.record("import", Phase.DB, () -> userRepository.insertAllWithRole(valid.stream().map(users::get).toList()));
+
+        return batch.stream().map(line -> {
+            if (line.rejected() != null) {
+                return line.rejected();
+            }
+
+            UUID id = users.get(line).getId();
+            if (!inserted.contains(id)) {
+                return UserImportResultDTO.builder().line(line.line()).status(HttpStatus.FORBIDDEN.value()).message("Already exist user with same email.").build();
+            }
+            return UserImportResultDTO.builder().line(line.line()).status(HttpStatus.CREATED.value()).id(id).build();
+        }).toList();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static UserImportResultDTO rejected(long line, String message, List<String> errors) {
+        return UserImportResultDTO.builder().line(line).status(HttpStatus.BAD_REQUEST.value()).message(message).errors(errors).build();
+    }
+}
@@ -1,12 +1,16 @@
 package com.springcloud.demo.usersmicroservice.users.mapper;
 
+import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.mapper.UserRoleMapper;
 import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UpdateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
 import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserView;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
 
+import java.util.List;
 import java.util.Optional;
 
 
@@ -42,6 +46,7 @@ public class UserMapper {
                         .toList())
                 .createdAt(user.getCreatedAt())
                 .lastUpdated(user.getLastUpdated())
+                .version(user.getVersion())
                 .build();
 
     }
@@ -59,4 +64,58 @@ public class UserMapper {
                 .build();
 
     }
+
+    static public UserResponseDTO userViewToUserResponseDto(UserView user, List<UserRoleResponseDTO> roles) {
+        return UserResponseDTO.builder()
+                .id(user.id())
+                .email(user.email())
+                .name(user.name())
+                .roles(roles)
+                .createdAt(user.createdAt())
+                .lastUpdated(user.lastUpdated())
+                .build();
+    }
+
+    /**
+     * @param rows rows of the same user, at least one
+     */
+    static public UserResponseDTO userWithRoleViewsToUserResponseDto(List<UserWithRoleView> rows) {
+        UserWithRoleView user = rows.getFirst();
+
+        return UserResponseDTO.builder()
+                .id(user.id())
+                .email(user.email())
+                .name(user.name())
+                .roles(rolesOf(rows))
+                .createdAt(user.createdAt())
+                .lastUpdated(user.lastUpdated())
+                .version(user.version())
+                .build();
+    }
+
+    /**
+     * @param rows rows of the same user, at least one
+     */
+    static public UserAuthResponseDTO userWithRoleViewsToUserAuthResponseDto(List<UserWithRoleView> rows) {
+        UserWithRoleView user = rows.getFirst();
+
+        return UserAuthResponseDTO.builder()
+                .id(user.id())
+                .email(user.email())
+                .password(user.password())
+                .roles(rolesOf(rows))
+                .build();
+    }
+
+    static private List<UserRoleResponseDTO> rolesOf(List<UserWithRoleView> rows) {
+        return rows
+                .stream()
+                .filter(row -> row.roleId() != null)
+                .map(row -> UserRoleResponseDTO.builder()
+                        .id(row.roleId())
+                        .role(row.role())
+                        .createdAt(row.roleCreatedAt())
+                        .build())
+                .toList();
+    }
 }
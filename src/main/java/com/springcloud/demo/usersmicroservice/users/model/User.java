@@ -3,6 +3,9 @@ package com.springcloud.demo.usersmicroservice.users.model;
 import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -12,6 +15,8 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
 @Getter
 @Setter
 @ToString(exclude = "roles")
@@ -20,6 +25,9 @@ import java.util.UUID;
 @NoArgsConstructor
 public class User {
 
+    public static final String CACHE_REGION = "users";
+    public static final String ROLES_CACHE_REGION = "users.roles";
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
@@ -36,6 +44,14 @@ public class User {
     @UpdateTimestamp
     private LocalDateTime lastUpdated;
 
+    /**
+     * Incremented on every change of the user or its roles, exposed as the ETag of the user
+     */
+    @Version
+    private Long version;
+
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.ROLES_CACHE_REGION)
     @OneToMany(mappedBy = "user", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     private List<UserRole> roles;
 
@@ -0,0 +1,37 @@
+package com.springcloud.demo.usersmicroservice.users.pagination;
+
+import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
+import com.springcloud.demo.usersmicroservice.users.projection.UserView;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position of the last user returned in a page. Sent to clients as an opaque string
+ * so next page can be requested seeking by (created_at, id) instead of using an offset.
+ */
+public record UserCursor(LocalDateTime createdAt, UUID id) {
+
+    public static final Sort SORT = Sort.by("createdAt", "id");
+
+    public static UserCursor from(UserView user) {
+        return new UserCursor(user.createdAt(), user.id());
+    }
+
+    public static UserCursor decode(String cursor) {
+        try {
+            String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+            return new UserCursor(LocalDateTime.parse(values[0]), UUID.fromString(values[1]));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Cursor not valid");
+        }
+    }
+
+    public String encode() {
+        String value = createdAt + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
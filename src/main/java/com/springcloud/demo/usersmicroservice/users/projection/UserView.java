@@ -0,0 +1,10 @@
+package com.springcloud.demo.usersmicroservice.users.projection;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Columns of a user read without loading the entity into the persistence context
+ */
+public record UserView(UUID id, String name, String email, LocalDateTime createdAt, LocalDateTime lastUpdated) {
+}
@@ -0,0 +1,21 @@
+package com.springcloud.demo.usersmicroservice.users.projection;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One row per role of a user, role columns are null when the user has no roles
+ */
+public record UserWithRoleView(
+        UUID id,
+        String name,
+        String email,
+        String password,
+        LocalDateTime createdAt,
+        LocalDateTime lastUpdated,
+        Long version,
+        UUID roleId,
+        String role,
+        LocalDateTime roleCreatedAt
+) {
+}
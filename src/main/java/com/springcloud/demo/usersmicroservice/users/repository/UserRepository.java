@@ -1,21 +1,84 @@
 package com.springcloud.demo.usersmicroservice.users.repository;
 
 import com.springcloud.demo.usersmicroservice.users.model.User;
-import org.springframework.data.domain.Page;
+import com.springcloud.demo.usersmicroservice.users.projection.UserView;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
-public interface UserRepository extends JpaRepository<User, UUID> {
+/**
+ * Lists use the *View queries, which build projections straight from the result set.
+ * Single users are loaded as entities through the second level cache.
+ * <p>
+ * Queries run in read only transactions, which are sent to the replicas when there are.
+ */
+public interface UserRepository extends JpaRepository<User, UUID>, UserRepositoryCustom {
 
-    @Query("SELECT u FROM User u " +
-            "WHERE u.name ILIKE %?1% " +
-            "OR u.email ILIKE %?1"
+    String SELECT_USER_VIEW = "SELECT new com.springcloud.demo.usersmicroservice.users.projection.UserView(" +
+            "u.id, u.name, u.email, u.createdAt, u.lastUpdated) FROM User u ";
+
+    String SELECT_USER_WITH_ROLE_VIEW = "SELECT new com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView(" +
+            "u.id, u.name, u.email, u.password, u.createdAt, u.lastUpdated, u.version, r.id, r.role, r.createdAt) " +
+            "FROM User u LEFT JOIN u.roles r ";
+
+    /**
+     * Page of users without the count query executed by {@link #findAll(Pageable)}
+     */
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_VIEW)
+    Slice<UserView> findAllBy(Pageable pageable);
+
+    /**
+     * Substring search over name and email, served by the pg_trgm indexes created in V6
+     */
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_VIEW +
+            "WHERE u.name ILIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()} " +
+            "OR u.email ILIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()}"
+    )
+    Slice<UserView> findBySearchTerm(String searchTerm, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT count(u) FROM User u " +
+            "WHERE u.name ILIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()} " +
+            "OR u.email ILIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()}"
     )
-    Page<User> findBySearchTerm(String searchTerm, Pageable pageable);
+    long countBySearchTerm(String searchTerm);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_VIEW +
+            "WHERE u.createdAt >= ?1 " +
+            "AND (u.createdAt > ?1 OR u.id > ?2)"
+    )
+    Slice<UserView> findAllAfter(LocalDateTime createdAt, UUID id, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_VIEW +
+            "WHERE u.createdAt >= ?1 " +
+            "AND (u.createdAt > ?1 OR u.id > ?2) " +
+            "AND (u.name ILIKE %?#{escape([2])}% ESCAPE ?#{escapeCharacter()} " +
+            "OR u.email ILIKE %?#{escape([2])}% ESCAPE ?#{escapeCharacter()})"
+    )
+    Slice<UserView> findBySearchTermAfter(LocalDateTime createdAt, UUID id, String searchTerm, Pageable pageable);
+
+    /**
+     * Served by the unique index on lower(email) created in V7
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT CASE WHEN count(u) > 0 THEN true ELSE false END FROM User u WHERE lower(u.email) = lower(?1)")
+    boolean existsByEmailIgnoreCase(String email);
 
-    Optional<User> findByEmail(String email);
+    /**
+     * @return empty list when user not exist
+     */
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_WITH_ROLE_VIEW + "WHERE lower(u.email) = lower(?1)")
+    List<UserWithRoleView> findViewByEmailIgnoreCase(String email);
 }
@@ -0,0 +1,75 @@
+package com.springcloud.demo.usersmicroservice.users.repository;
+
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Number of users taken from the planner statistics on PostgreSQL, exact count on other databases
+     */
+    long estimateCount();
+
+    /**
+     * Plans the next statements of the current transaction for their parameters on PostgreSQL. A generic plan of
+     * the prepared ILIKE searches does not see the pattern and skips the trigram indexes, the other statements keep
+     * their cached plans
+     */
+    void useCustomPlans();
+
+    /**
+     * Inserts the user and its first role in one statement on PostgreSQL, relying on the unique index on lower(email)
+     *
+     * @return row of the created user, empty list when a user with the same email ignoring case exists
+     */
+    List<UserWithRoleView> insertWithRole(User user, String role);
+
+    /**
+     * Inserts a batch of users, each with the one role in its roles, with the ids already set on both.
+     * On PostgreSQL the batch is one statement binding a column array per field.
+     *
+     * @return ids of the users inserted, the others have the email of an existing user or of one earlier in the batch
+     */
+    Set<UUID> insertAllWithRole(List<User> users);
+
+    /**
+     * Reads users with their roles through a forward only cursor, one row per role ordered by user id.
+     * The rows of a user without roles have null role columns and the password is not read.
+     *
+     * @param updatedSince only users changed from then on, all when null
+     * @param fetchSize rows held in memory at a time
+     */
+    void forEachWithRoles(LocalDateTime updatedSince, int fetchSize, Consumer<UserWithRoleView> action);
+
+    /**
+     * Loads the user with its roles through the second level cache, initialized to be used detached
+     */
+    Optional<User> findCachedById(UUID id);
+
+    /**
+     * Version of the user held by the second level cache, else read alone without the roles
+     */
+    Optional<Long> findCachedVersionById(UUID id);
+
+    /**
+     * Roles are part of the user representation, changing them changes the version and last update of the user.
+     * Plain SQL like the other writes outside of Hibernate, a bulk query would drop every cached user.
+     * The cached user is soft locked until the transaction completes, joined or started here.
+     */
+    int incrementVersion(UUID id);
+
+    /**
+     * Roles are deleted by the ON DELETE CASCADE of their foreign key, without loading the user.
+     * The cached user is soft locked until the transaction completes
+     *
+     * @return 0 when user not exist
+     */
+    int deleteUserById(UUID id);
+}
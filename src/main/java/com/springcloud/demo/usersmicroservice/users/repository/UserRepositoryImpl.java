@@ -0,0 +1,293 @@
+package com.springcloud.demo.usersmicroservice.users.repository;
+
+import com.springcloud.demo.usersmicroservice.datasource.DatabasePlatform;
+import com.springcloud.demo.usersmicroservice.datasource.ReplicaRoutingDataSource;
+import com.springcloud.demo.usersmicroservice.users.cache.UserEntityCache;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+class UserRepositoryImpl implements UserRepositoryCustom {
+
+    /**
+     * The role is only inserted when the user is, the join returns no row on conflict
+     */
+    private static final String INSERT_USER_WITH_ROLE = """
+            WITH new_user AS (
+                INSERT INTO users (name, email, password, last_updated) VALUES (?, ?, ?, now())
+                ON CONFLICT (lower(email)) DO NOTHING
+                RETURNING id, name, email, password, created_at, last_updated, version
+            ), new_role AS (
+                INSERT INTO user_roles (role, user_id) SELECT ?, id FROM new_user
+                RETURNING id, role, created_at
+            )
+            SELECT u.id, u.name, u.email, u.password, u.created_at, u.last_updated, u.version,
+                r.id AS role_id, r.role, r.created_at AS role_created_at
+            FROM new_user u CROSS JOIN new_role r
+            """;
+
+    /**
+     * One statement per batch instead of a JDBC batch: reWriteBatchedInserts folds a batch into multi-row inserts
+     * that report no count per row, so the skipped emails could not be told apart.
+     * Two rows of the batch with the same email are a conflict too, the first one is inserted.
+     */
+    private static final String INSERT_ALL_USERS_WITH_ROLE = """
+            WITH new_users AS (
+                INSERT INTO users (id, name, email, password, last_updated)
+                SELECT u.id, u.name, u.email, u.password, now()
+                FROM unnest(?::uuid[], ?::varchar[], ?::varchar[], ?::varchar[]) AS u(id, name, email, password)
+                ON CONFLICT (lower(email)) DO NOTHING
+                RETURNING id
+            ), new_roles AS (
+                INSERT INTO user_roles (id, role, user_id)
+                SELECT r.id, r.role, r.user_id
+                FROM unnest(?::uuid[], ?::varchar[], ?::uuid[]) AS r(id, role, user_id)
+                JOIN new_users n ON n.id = r.user_id
+            )
+            SELECT id FROM new_users
+            """;
+
+    private static final String SELECT_USERS_WITH_ROLES = """
+            SELECT u.id, u.name, u.email, u.created_at, u.last_updated, u.version,
+                r.id AS role_id, r.role, r.created_at AS role_created_at
+            FROM users u LEFT JOIN user_roles r ON r.user_id = u.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final DatabasePlatform databasePlatform;
+    private final UserEntityCache userEntityCache;
+
+    @Override
+    public long estimateCount() {
+        if (databasePlatform.isPostgres()) {
+            // reltuples is -1 (or 0 before PostgreSQL 14) until the table is analyzed
+            Long estimate = jdbcTemplate.queryForObject("SELECT reltuples::bigint FROM pg_class WHERE oid = 'users'::regclass", Long.class);
+            if (estimate != null && estimate > 0) {
+                return estimate;
+            }
+        }
+
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM users", Long.class);
+    }
+
+    @Override
+    public void useCustomPlans() {
+        if (databasePlatform.isPostgres()) {
+            jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_custom_plan");
+        }
+    }
+
+    @Override
+    public List<UserWithRoleView> insertWithRole(User user, String role) {
+        if (databasePlatform.isPostgres()) {
+            return jdbcTemplate.query(INSERT_USER_WITH_ROLE, (rs, rowNum) -> new UserWithRoleView(
+                    rs.getObject("id", UUID.class),
+                    rs.getString("name"),
+                    rs.getString("email"),
+                    rs.getString("password"),
+                    rs.getTimestamp("created_at").toLocalDateTime(),
+                    rs.getTimestamp("last_updated").toLocalDateTime(),
+                    rs.getLong("version"),
+                    rs.getObject("role_id", UUID.class),
+                    rs.getString("role"),
+                    rs.getTimestamp("role_created_at").toLocalDateTime()
+            ), user.getName(), user.getEmail(), user.getPassword(), role);
+        }
+
+        // Check then insert, other databases have no unique index on the email
+        return transactionTemplate.execute(status -> {
+            Long existing = jdbcTemplate.queryForObject("SELECT count(*) FROM users WHERE lower(email) = lower(?)", Long.class, user.getEmail());
+            if (existing != null && existing > 0) {
+                return List.of();
+            }
+
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            UserWithRoleView created = new UserWithRoleView(
+                    UUID.randomUUID(),
+                    user.getName(),
+                    user.getEmail(),
+                    user.getPassword(),
+                    now,
+                    now,
+                    0L,
+                    UUID.randomUUID(),
+                    role,
+                    now
+            );
+            jdbcTemplate.update("INSERT INTO users (id, name, email, password, created_at, last_updated, version) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    created.id(), created.name(), created.email(), created.password(), created.createdAt(), created.lastUpdated(), created.version());
+            jdbcTemplate.update("INSERT INTO user_roles (id, role, user_id, created_at) VALUES (?, ?, ?, ?)",
+                    created.roleId(), created.role(), created.id(), created.roleCreatedAt());
+            return List.of(created);
+        });
+    }
+
+    @Override
+    public Set<UUID> insertAllWithRole(List<User> users) {
+        if (users.isEmpty()) {
+            return Set.of();
+        }
+
+        if (databasePlatform.isPostgres()) {
+            List<UUID> inserted = jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_ALL_USERS_WITH_ROLE);
+                statement.setArray(1, connection.createArrayOf("uuid", users.stream().map(User::getId).toArray()));
+                statement.setArray(2, connection.createArrayOf("varchar", users.stream().map(User::getName).toArray()));
+                statement.setArray(3, connection.createArrayOf("varchar", users.stream().map(User::getEmail).toArray()));
+                statement.setArray(4, connection.createArrayOf("varchar", users.stream().map(User::getPassword).toArray()));
+                statement.setArray(5, connection.createArrayOf("uuid", users.stream().map(user -> role(user).getId()).toArray()));
+                statement.setArray(6, connection.createArrayOf("varchar", users.stream().map(user -> role(user).getRole()).toArray()));
+                statement.setArray(7, connection.createArrayOf("uuid", users.stream().map(User::getId).toArray()));
+                return statement;
+            }, (rs, rowNum) -> rs.getObject("id", UUID.class));
+            return new HashSet<>(inserted);
+        }
+
+        // Check then insert as JDBC batches, other databases have no unique index on the email
+        return transactionTemplate.execute(status -> {
+            Set<String> emails = new HashSet<>(new NamedParameterJdbcTemplate(jdbcTemplate).queryForList(
+                    "SELECT lower(email) FROM users WHERE lower(email) IN (:emails)",
+                    Map.of("emails", users.stream().map(user -> user.getEmail().toLowerCase(Locale.ROOT)).toList()),
+                    String.class
+            ));
+
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            List<Object[]> newUsers = new ArrayList<>();
+            List<Object[]> newRoles = new ArrayList<>();
+            Set<UUID> inserted = new HashSet<>();
+
+            for (User user : users) {
+                if (emails.add(user.getEmail().toLowerCase(Locale.ROOT))) {
+                    newUsers.add(new Object[]{user.getId(), user.getName(), user.getEmail(), user.getPassword(), now, now, 0L});
+                    newRoles.add(new Object[]{role(user).getId(), role(user).getRole(), user.getId(), now});
+                    inserted.add(user.getId());
+                }
+            }
+
+            jdbcTemplate.batchUpdate("INSERT INTO users (id, name, email, password, created_at, last_updated, version) VALUES (?, ?, ?, ?, ?, ?, ?)", newUsers);
+            jdbcTemplate.batchUpdate("INSERT INTO user_roles (id, role, user_id, created_at) VALUES (?, ?, ?, ?)", newRoles);
+            return inserted;
+        });
+    }
+
+    @Override
+    public void forEachWithRoles(LocalDateTime updatedSince, int fetchSize, Consumer<UserWithRoleView> action) {
+        String sql = SELECT_USERS_WITH_ROLES
+                + (updatedSince != null ? "WHERE u.last_updated >= ? " : "")
+                + "ORDER BY u.id, r.created_at";
+
+        // The PostgreSQL driver only honors the fetch size inside a transaction, otherwise it reads all rows at once
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+
+        readOnly.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            if (updatedSince != null) {
+                statement.setObject(1, updatedSince);
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            Timestamp roleCreatedAt = rs.getTimestamp("role_created_at");
+            action.accept(new UserWithRoleView(
+                    rs.getObject("id", UUID.class),
+                    rs.getString("name"),
+                    rs.getString("email"),
+                    null,
+                    rs.getTimestamp("created_at").toLocalDateTime(),
+                    rs.getTimestamp("last_updated").toLocalDateTime(),
+                    rs.getLong("version"),
+                    rs.getObject("role_id", UUID.class),
+                    rs.getString("role"),
+                    roleCreatedAt != null ? roleCreatedAt.toLocalDateTime() : null
+            ));
+        }));
+    }
+
+    @Override
+    public Optional<User> findCachedById(UUID id) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+
+        // a miss is read from the primary, a lagging replica would fill every later hit with the old user
+        try (ReplicaRoutingDataSource.Scope primary = ReplicaRoutingDataSource.usePrimary()) {
+            return readOnly.execute(status -> {
+                EntityGraph<User> roles = entityManager.createEntityGraph(User.class);
+                roles.addAttributeNodes("roles");
+
+                User user = entityManager.find(User.class, id, Map.of(SpecHints.HINT_SPEC_FETCH_GRAPH, roles));
+                if (user != null) {
+                    Hibernate.initialize(user.getRoles());
+                }
+                return Optional.ofNullable(user);
+            });
+        }
+    }
+
+    @Override
+    public Optional<Long> findCachedVersionById(UUID id) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+
+        // from the primary like a miss of findCachedById, so both agree on the version
+        try (ReplicaRoutingDataSource.Scope primary = ReplicaRoutingDataSource.usePrimary()) {
+            return readOnly.execute(status -> {
+                if (entityManager.getEntityManagerFactory().getCache().contains(User.class, id)) {
+                    return Optional.ofNullable(entityManager.find(User.class, id)).map(User::getVersion);
+                }
+
+                return entityManager.createQuery("SELECT u.version FROM User u WHERE u.id = :id", Long.class)
+                        .setParameter("id", id)
+                        .getResultStream()
+                        .findFirst();
+            });
+        }
+    }
+
+    @Override
+    public int incrementVersion(UUID id) {
+        return transactionTemplate.execute(status -> {
+            userEntityCache.lock(id);
+            return jdbcTemplate.update("UPDATE users SET version = version + 1, last_updated = localtimestamp WHERE id = ?", id);
+        });
+    }
+
+    @Override
+    public int deleteUserById(UUID id) {
+        return transactionTemplate.execute(status -> {
+            userEntityCache.lock(id);
+            return jdbcTemplate.update("DELETE FROM users WHERE id = ?", id);
+        });
+    }
+
+    private static UserRole role(User user) {
+        return user.getRoles().getFirst();
+    }
+}
@@ -1,115 +1,299 @@
 package com.springcloud.demo.usersmicroservice.users.service;
 
-import com.amazonaws.xray.spring.aop.XRayEnabled;
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics.Phase;
+import com.springcloud.demo.usersmicroservice.password.PasswordHasher;
+import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.mapper.UserRoleMapper;
-import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
+import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
+import com.springcloud.demo.usersmicroservice.users.cache.UserAuthCache;
+import com.springcloud.demo.usersmicroservice.users.cache.SingleFlight;
+import com.springcloud.demo.usersmicroservice.users.cache.UserJsonCache;
 import com.springcloud.demo.usersmicroservice.users.dto.*;
 import com.springcloud.demo.usersmicroservice.exceptions.ForbiddenException;
 import com.springcloud.demo.usersmicroservice.exceptions.NotFoundException;
+import com.springcloud.demo.usersmicroservice.exceptions.PreconditionFailedException;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
 import com.springcloud.demo.usersmicroservice.users.mapper.UserMapper;
 import com.springcloud.demo.usersmicroservice.users.model.User;
-import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.pagination.UserCursor;
+import com.springcloud.demo.usersmicroservice.users.projection.UserView;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
 import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Service
+@Timed(value = "users.service", histogram = true)
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final UserRoleRepository userRoleRepository;
+    private final PasswordHasher passwordHasher;
+    private final UserAuthCache userAuthCache;
+    private final UserJsonCache userJsonCache;
+    private final SingleFlight<UUID, Optional<User>> userByIdSingleFlight;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ServiceMetrics serviceMetrics;
 
 
-    public UserResponseDTO create(CreateUserDTO createUserDTO) {
+    /**
+     * Completes on the application task executor once the password is hashed and the user is saved.
+     * A known email fails before hashing, without taking a hasher slot. The insert still checks the email,
+     * the existing user is only read to explain a conflict.
+     */
+    public CompletableFuture<UserResponseDTO> create(CreateUserDTO createUserDTO) {
 
-        Optional<User> userExist = userRepository.findByEmail(createUserDTO.getEmail());
+        String role = UserRoleMapper.stringToUserRole(createUserDTO.getRole()).getRole();
+        User user = UserMapper.createUserDtoToUser(createUserDTO);
 
-        userExist.ifPresent(user -> {
-            String roleSelected = Optional.ofNullable(createUserDTO.getRole()).orElse(Roles.CUSTOMER.name());
-            boolean userAlreadyHasSameRole = user.getRoles().stream().anyMatch(role -> role.getRole().equals(roleSelected));
-            if(userAlreadyHasSameRole){
-                throw new ForbiddenException("Already exist user with same email.");
-            } else {
-                throw new ForbiddenException("Already exist user with same email. To add new role try update the user");
-            }
-        });
+        boolean emailExists = serviceMetrics.record("create", Phase.DB, () -> userRepository.existsByEmailIgnoreCase(user.getEmail()));
+        if(emailExists){
+            return CompletableFuture.failedFuture(emailAlreadyExist(user.getEmail(), role));
+        }
 
-        User user = UserMapper.createUserDtoToUser(createUserDTO);
+        return serviceMetrics
+                .recordAsync("create", Phase.HASHING, () -> passwordHasher.encode(createUserDTO.getPassword()))
+                .thenApply(password -> {
+                    user.setPassword(password);
+                    List<UserWithRoleView> rows = serviceMetrics.record("create", Phase.DB, () -> userRepository.insertWithRole(user, role));
 
-        user.setPassword(passwordEncoder.encode(createUserDTO.getPassword()));
+                    if(rows.isEmpty()){
+                        throw emailAlreadyExist(user.getEmail(), role);
+                    }
 
-        UserRole userRole = UserRoleMapper.stringToUserRole(createUserDTO.getRole());
-        userRole.setUser(user);
-        user.setRoles(List.of(userRole));
+                    return serviceMetrics.record("create", Phase.MAPPING, () -> UserMapper.userWithRoleViewsToUserResponseDto(rows));
+                });
+    }
 
-        user = userRepository.save(user);
+    private ForbiddenException emailAlreadyExist(String email, String role) {
+        List<UserWithRoleView> existing = serviceMetrics.record("create", Phase.DB, () -> userRepository.findViewByEmailIgnoreCase(email));
 
-        return UserMapper.userToUserResponseDto(user);
+        boolean userAlreadyHasSameRole = existing.stream().anyMatch(row -> role.equals(row.role()));
+        if(userAlreadyHasSameRole || existing.isEmpty()){
+            return new ForbiddenException("Already exist user with same email.");
+        }
+        return new ForbiddenException("Already exist user with same email. To add new role try update the user");
     }
 
-    public List<UserResponseDTO> findAll(UserFiltersDTO userFiltersDTO) {
-        int page = Optional.ofNullable(userFiltersDTO.getPage()).orElse(1) - 1;
+    /**
+     * Page, total and roles read in one read only transaction, from a replica when there are
+     */
+    @Transactional(readOnly = true)
+    public UserPageDTO findAll(UserFiltersDTO userFiltersDTO) {
         int limit = Optional.ofNullable(userFiltersDTO.getLimit()).orElse(20);
-        Pageable pageable = PageRequest.of(page,limit);
 
-        List<User> users;
+        Slice<UserView> slice = serviceMetrics.record("findAll", Phase.DB, () -> findPage(userFiltersDTO, limit));
+        List<UserView> users = slice.getContent();
 
+        String nextCursor = slice.hasNext() ? UserCursor.from(users.getLast()).encode() : null;
+
+        Long total = Boolean.TRUE.equals(userFiltersDTO.getIncludeTotal())
+                ? serviceMetrics.record("findAll", Phase.DB, () -> countUsers(userFiltersDTO))
+                : null;
+
+        Map<UUID, List<UserRoleResponseDTO>> roles = serviceMetrics.record("findAll", Phase.DB, () -> findRolesByUser(users));
+
+        return serviceMetrics.record("findAll", Phase.MAPPING, () -> UserPageDTO
+                .builder()
+                .users(users
+                        .stream()
+                        .map(user -> UserMapper.userViewToUserResponseDto(user, roles.getOrDefault(user.id(), List.of())))
+                        .toList())
+                .nextCursor(nextCursor)
+                .total(total)
+                .build());
+    }
+
+    /**
+     * @return the page, with a next one when it has a row after the last user
+     */
+    private Slice<UserView> findPage(UserFiltersDTO userFiltersDTO, int limit) {
         if(userFiltersDTO.getQ() != null){
-            users = userRepository
-                    .findBySearchTerm(userFiltersDTO.getQ(), pageable)
-                    .getContent();
-        } else {
-            users = userRepository.findAll(pageable).getContent();
+            // for the rest of the transaction, the count included
+            userRepository.useCustomPlans();
         }
 
-        return users
-                .stream()
-                .map(UserMapper::userToUserResponseDto)
-                .toList();
+        if(userFiltersDTO.getCursor() != null){
+            UserCursor cursor = UserCursor.decode(userFiltersDTO.getCursor());
+            Pageable pageable = PageRequest.of(0, limit, UserCursor.SORT);
+
+            if(userFiltersDTO.getQ() != null){
+                return userRepository.findBySearchTermAfter(cursor.createdAt(), cursor.id(), userFiltersDTO.getQ(), pageable);
+            }
+            return userRepository.findAllAfter(cursor.createdAt(), cursor.id(), pageable);
+        }
+
+        int page = Optional.ofNullable(userFiltersDTO.getPage()).orElse(1) - 1;
+        Pageable pageable = PageRequest.of(page, limit, UserCursor.SORT);
+
+        if(userFiltersDTO.getQ() != null){
+            return userRepository.findBySearchTerm(userFiltersDTO.getQ(), pageable);
+        }
+        return userRepository.findAllBy(pageable);
+    }
+
+    private long countUsers(UserFiltersDTO userFiltersDTO) {
+        return userFiltersDTO.getQ() != null
+                ? userRepository.countBySearchTerm(userFiltersDTO.getQ())
+                : userRepository.estimateCount();
     }
 
+    /**
+     * Served from the second level cache, dropped by {@link UserChangedEvent}
+     */
     public UserResponseDTO findById(String id) {
-        User user = userRepository.findById(UUID.fromString(id)).orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
+        User user = findCachedById(id);
+
+        return serviceMetrics.record("findById", Phase.MAPPING, () -> UserMapper.userToUserResponseDto(user));
+    }
 
-        return UserMapper.userToUserResponseDto(user);
+    /**
+     * Same user as {@link #findById(String)} as JSON, mapped and serialized only when its version is not cached
+     */
+    public UserJsonCache.Json findJsonById(String id) {
+        User user = findCachedById(id);
+
+        return userJsonCache.user(user.getId(), user.getVersion(), () ->
+                serviceMetrics.record("findById", Phase.MAPPING, () -> UserMapper.userToUserResponseDto(user)));
+    }
+
+    /**
+     * Concurrent reads of the same user share one load, the user is not changed by them
+     */
+    private User findCachedById(String id) {
+        return serviceMetrics
+                .record("findById", Phase.DB, () -> loadCachedById(UUID.fromString(id)))
+                .orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
+    }
+
+    private Optional<User> loadCachedById(UUID id) {
+        return userByIdSingleFlight.load(id, () -> userRepository.findCachedById(id));
+    }
+
+    /**
+     * Version of the user sent as ETag, from the same cached user as {@link #findById(String)} when it is cached,
+     * otherwise the roles are not loaded to compare it
+     */
+    public long findVersion(String id) {
+        return serviceMetrics
+                .record("findVersion", Phase.DB, () -> userRepository.findCachedVersionById(UUID.fromString(id)))
+                .orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
     }
 
-    public UserResponseDTO update(UpdateUserDTO updateUserDTO, String id) {
-        User user = userRepository.findById(UUID.fromString(id)).orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
+    /**
+     * Completes on the application task executor when password is changed
+     *
+     * @param expectedVersion version sent in If-Match, null to overwrite any version
+     */
+    public CompletableFuture<UserResponseDTO> update(UpdateUserDTO updateUserDTO, String id, Long expectedVersion) {
+        User user = findToUpdate(id, expectedVersion);
 
+        if(updateUserDTO.getPassword() == null){
+            return CompletableFuture.completedFuture(save(user, updateUserDTO, null, expectedVersion));
+        }
+
+        return serviceMetrics
+                .recordAsync("update", Phase.HASHING, () -> passwordHasher.encode(updateUserDTO.getPassword()))
+                .thenApply(password -> save(user, updateUserDTO, password, expectedVersion));
+    }
+
+    /**
+     * Not shared with concurrent reads, the user returned is changed by the update
+     */
+    private User findToUpdate(String id, Long expectedVersion) {
+        User user = serviceMetrics
+                .record("update", Phase.DB, () -> userRepository.findCachedById(UUID.fromString(id)))
+                .orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
+
+        if(expectedVersion != null && !expectedVersion.equals(user.getVersion())){
+            throw new PreconditionFailedException("User with id: " + id + " was modified, current version is " + user.getVersion());
+        }
+        return user;
+    }
+
+    private UserResponseDTO save(User user, UpdateUserDTO updateUserDTO, String password, Long expectedVersion) {
         User updatedUser = UserMapper.userToUserUpdated(user, updateUserDTO);
+        Optional.ofNullable(password).ifPresent(updatedUser::setPassword);
 
-        if(updateUserDTO.getPassword() != null){
-            updatedUser.setPassword(passwordEncoder.encode(updateUserDTO.getPassword()));
+        User savedUser;
+        try {
+            savedUser = serviceMetrics.record("update", Phase.DB, () -> userRepository.save(updatedUser));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            if(expectedVersion != null){
+                throw new PreconditionFailedException("User with id: " + user.getId() + " was modified");
+            }
+            // Without If-Match the last write wins, apply the changes again over the current user
+            return save(findToUpdate(user.getId().toString(), null), updateUserDTO, password, null);
+        } catch (DataIntegrityViolationException e) {
+            // the only unique constraint besides the ids is the one on lower(email)
+            throw new ForbiddenException("Already exist user with same email.");
         }
 
-        updatedUser = userRepository.save(updatedUser);
+        eventPublisher.publishEvent(new UserChangedEvent(savedUser.getId()));
 
-        return UserMapper.userToUserResponseDto(updatedUser);
+        return serviceMetrics.record("update", Phase.MAPPING, () -> UserMapper.userToUserResponseDto(savedUser));
     }
 
     public SimpleResponseDTO delete(String id) {
-        User user = userRepository.findById(UUID.fromString(id)).orElseThrow(()-> new NotFoundException("Not found user with id: " + id));
+        UUID userId = UUID.fromString(id);
+
+        int deleted = serviceMetrics.record("delete", Phase.DB, () -> userRepository.deleteUserById(userId));
+
+        if(deleted == 0){
+            throw new NotFoundException("Not found user with id: " + id);
+        }
 
-        userRepository.delete(user);
+        eventPublisher.publishEvent(new UserChangedEvent(userId));
 
         return new SimpleResponseDTO(true);
     }
 
     public UserAuthResponseDTO findByEmailToAuth(String email) {
-        User user = userRepository
-                .findByEmail(email)
+        return userAuthCache
+                .get(email)
                 .orElseThrow(()-> new NotFoundException("Not found user with email: " + email));
+    }
+
+    /**
+     * Same user as {@link #findByEmailToAuth(String)} as JSON, serialized once per user held by the auth cache
+     */
+    public byte[] findJsonByEmailToAuth(String email) {
+        return userJsonCache.authUser(findByEmailToAuth(email));
+    }
 
-        return UserMapper.userToUserAuthResponseDto(user);
+    /**
+     * Roles of all users of a page in one query
+     */
+    private Map<UUID, List<UserRoleResponseDTO>> findRolesByUser(List<UserView> users) {
+        if(users.isEmpty()){
+            return Map.of();
+        }
+
+        return userRoleRepository
+                .findViewsByUserIdIn(users.stream().map(UserView::id).toList())
+                .stream()
+                .collect(Collectors.groupingBy(
+                        UserRoleView::userId,
+                        Collectors.mapping(UserRoleMapper::userRoleViewToUserRoleResponseDTO, Collectors.toList())
+                ));
     }
 }
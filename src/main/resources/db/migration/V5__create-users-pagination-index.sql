@@ -0,0 +1,5 @@
+ALTER TABLE users ALTER COLUMN created_at SET NOT NULL;
+
+CREATE INDEX idx_users_created_at_id ON users (created_at, id);
+
+CREATE INDEX idx_user_roles_user_id ON user_roles (user_id);
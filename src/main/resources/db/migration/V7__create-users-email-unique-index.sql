@@ -0,0 +1,2 @@
+-- Fails when users already share an email ignoring case, those rows have to be merged before migrating
+CREATE UNIQUE INDEX idx_users_email_lower ON users (lower(email));
@@ -0,0 +1,11 @@
+-- Keep the oldest of roles added twice to the same user
+DELETE FROM user_roles a
+USING user_roles b
+WHERE a.user_id = b.user_id
+  AND a.role = b.role
+  AND (a.created_at, a.id) > (b.created_at, b.id);
+
+CREATE UNIQUE INDEX idx_user_roles_user_id_role ON user_roles (user_id, role);
+
+-- Lookups by user_id are served by the leading column of the unique index
+DROP INDEX idx_user_roles_user_id;
@@ -0,0 +1,156 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void readOnlyTransaction() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        routing.close();
+    }
+
+    @Test
+    void readFromReplicasInTurn() throws Exception {
+        routing = new ReplicaRoutingDataSource(database("primary"), replicas("replica1", database("replica1"), "replica2", database("replica2")), Duration.ofMinutes(1), meterRegistry);
+
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA2");
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+    }
+
+    @Test
+    void readFromPrimaryInsideScope() throws Exception {
+        routing = new ReplicaRoutingDataSource(database("primary"), replicas("replica1", database("replica1")), Duration.ofMinutes(1), meterRegistry);
+
+        try (ReplicaRoutingDataSource.Scope primary = ReplicaRoutingDataSource.usePrimary()) {
+            assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+        }
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+    }
+
+    @Test
+    void readFromPrimaryOutsideReadOnlyTransaction() throws Exception {
+        routing = new ReplicaRoutingDataSource(database("primary"), replicas("replica1", database("replica1")), Duration.ofMinutes(1), meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+    }
+
+    @Test
+    void leaveOutReplicaDownUntilHealthCheckPasses() throws Exception {
+        MutableDataSource replica2 = new MutableDataSource(new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down"));
+        routing = new ReplicaRoutingDataSource(database("primary"), replicas("replica1", database("replica1"), "replica2", replica2), Duration.ofMinutes(1), meterRegistry);
+
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+        assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+        assertThat(meterRegistry.get("users.datasource.replica.healthy").tag("replica", "replica2").gauge().value()).isZero();
+
+        routing.checkHealth();
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+        assertThat(databaseOf(routing)).isEqualTo("REPLICA1");
+
+        replica2.target = database("replica2");
+        routing.checkHealth();
+        assertThat(meterRegistry.get("users.datasource.replica.healthy").tag("replica", "replica2").gauge().value()).isOne();
+        assertThat(List.of(databaseOf(routing), databaseOf(routing))).containsExactlyInAnyOrder("REPLICA1", "REPLICA2");
+    }
+
+    @Test
+    void readFromPrimaryWhenAllReplicasDown() throws Exception {
+        DataSource primary = database("primary");
+        routing = new ReplicaRoutingDataSource(primary, replicas("replica1", new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down")), Duration.ofMinutes(1), meterRegistry);
+
+        assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+        assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+        assertThat(routing.getReadDataSources()).containsExactly(primary);
+    }
+
+    @Test
+    void readFromPrimaryAfterReplicaPoolTimeout() throws Exception {
+        try (HikariDataSource primary = new HikariDataSource();
+             HikariDataSource replica = ReplicaRoutingDataSource.replicaPool(primary, "replica1", "jdbc:h2:tcp://localhost:1/down", Duration.ofMillis(250))) {
+            primary.setJdbcUrl("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1");
+            routing = new ReplicaRoutingDataSource(primary, replicas("replica1", replica), Duration.ofMinutes(1), meterRegistry);
+
+            long start = System.nanoTime();
+            assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            assertThat(meterRegistry.get("users.datasource.replica.healthy").tag("replica", "replica1").gauge().value()).isZero();
+
+            start = System.nanoTime();
+            assertThat(databaseOf(routing)).isEqualTo("PRIMARY");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(250));
+        }
+    }
+
+    @Test
+    void readDataSourcesAreTheHealthyReplicas() {
+        DataSource replica1 = database("replica1");
+        routing = new ReplicaRoutingDataSource(database("primary"), replicas("replica1", replica1, "replica2", new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down")), Duration.ofMinutes(1), meterRegistry);
+
+        routing.checkHealth();
+
+        assertThat(routing.getReadDataSources()).containsExactly(replica1);
+    }
+
+    private static DataSource database(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+    }
+
+    private static Map<String, DataSource> replicas(Object... namesAndDataSources) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndDataSources.length; i += 2) {
+            replicas.put((String) namesAndDataSources[i], (DataSource) namesAndDataSources[i + 1]);
+        }
+        return replicas;
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getCatalog();
+        }
+    }
+
+    /**
+     * Replica brought back up by the test
+     */
+    static class MutableDataSource extends DelegatingDataSource {
+        DataSource target;
+
+        MutableDataSource(DataSource target) {
+            this.target = target;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return target.getConnection();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.springcloud.demo.usersmicroservice.datasource;
+
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Replica played by a second H2 database with the schema of the primary and its own rows,
+ * so the rows in a response tell which database served it
+ */
+@SpringBootTest(properties = {
+        "users.datasource.replica-urls=" + ReplicaRoutingTestIT.REPLICA_URL,
+        "users.datasource.read-your-writes-window=1m"
+})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+public class ReplicaRoutingTestIT {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replicaDb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcTemplate replica;
+
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        userRepository.deleteAll();
+
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "test", "test"));
+        replica.execute("DROP ALL OBJECTS");
+        jdbcTemplate.queryForList("SCRIPT NODATA", String.class).forEach(replica::execute);
+
+        user = userRepository.save(new User(null, "Primary", "primary@gmail.com", "encrypted_password", null, null, null, List.of()));
+        replica.update("INSERT INTO users (id, name, email, password, created_at, last_updated, version) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                UUID.randomUUID(), "Replica", "replica@gmail.com", "encrypted_password", LocalDateTime.now(), LocalDateTime.now(), 0L);
+    }
+
+    @Test
+    void readOnlyTransactionsReadFromReplica() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users"))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].email", Matchers.contains("replica@gmail.com")));
+    }
+
+    @Test
+    void cachedUserLoadedFromPrimary() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.email").value("primary@gmail.com"));
+    }
+
+    @Test
+    void readOwnWritesFromPrimary() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                .patch("/api/users/" + user.getId())
+                .header("X-UserId", user.getId().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Other name\"}")
+        )
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users").header("X-UserId", user.getId().toString()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].name", Matchers.contains("Other name")));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users").header("X-UserId", UUID.randomUUID().toString()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].name", Matchers.contains("Replica")));
+    }
+}
@@ -0,0 +1,72 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+
+/**
+ * The limit of auth lookups is 0, every one is rejected, the other endpoint classes keep their own limits
+ */
+@SpringBootTest(properties = {
+        "users.concurrency-limit.endpoints.auth.initial-limit=0",
+        "users.concurrency-limit.endpoints.auth.min-limit=0",
+        "users.concurrency-limit.endpoints.auth.max-limit=0"
+})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class ConcurrencyLimitTestIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void rejectOverTheLimitWithServiceUnavailable() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/email/user1@gmail.com"))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.SERVICE_UNAVAILABLE.value()))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message", Matchers.containsString("Too many requests")));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + UUID.randomUUID()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_FOUND.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users"))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        MvcResult created = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new CreateUserDTO("Gonza", "limited@gmail.com", "Abcd1234.", null))))
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(created))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_concurrency_rejected_total{endpoint=\"auth\"} 1.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_concurrency_limit{endpoint=\"read\"} 50.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_concurrency_in_flight{endpoint=\"read\"} 0.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_concurrency_in_flight{endpoint=\"write\"} 0.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_admission_queue_seconds_count{endpoint=\"list\"} 1")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_admission_starved_total{endpoint=\"list\"} 0.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_admission_waiting 0.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_exceptions_handled_total{exception=\"ServiceUnavailableException\",status=\"503\"} 1.0")));
+    }
+}
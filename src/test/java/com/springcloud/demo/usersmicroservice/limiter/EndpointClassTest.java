@@ -0,0 +1,41 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.*;
+
+class EndpointClassTest {
+
+    @Test
+    void classifyUsersEndpoints() {
+        assertThat(EndpointClass.of(request("GET", "/api/users"))).isEqualTo(EndpointClass.LIST);
+        assertThat(EndpointClass.of(request("GET", "/api/users/"))).isEqualTo(EndpointClass.LIST);
+        assertThat(EndpointClass.of(request("GET", "/api/users/email/gonzalo@gmail.com"))).isEqualTo(EndpointClass.AUTH);
+        assertThat(EndpointClass.of(request("GET", "/api/users/d0dd04ab-a40a-48a1-877e-8833e66342fb"))).isEqualTo(EndpointClass.READ);
+        assertThat(EndpointClass.of(request("POST", "/api/users"))).isEqualTo(EndpointClass.WRITE);
+        assertThat(EndpointClass.of(request("DELETE", "/api/users/d0dd04ab-a40a-48a1-877e-8833e66342fb/roles/a399bded-044d-4ffc-b2e7-70cefb21ed25"))).isEqualTo(EndpointClass.WRITE);
+    }
+
+    @Test
+    void notLimitOtherPaths() {
+        assertThat(EndpointClass.of(request("GET", "/api/usersX"))).isNull();
+        assertThat(EndpointClass.of(request("POST", "/api/users-admin"))).isNull();
+        assertThat(EndpointClass.of(request("GET", "/actuator/health"))).isNull();
+        assertThat(EndpointClass.of(request("POST", "/api/users/import"))).isNull();
+        assertThat(EndpointClass.of(request("GET", "/api/users/export"))).isNull();
+        assertThat(EndpointClass.of(request("OPTIONS", "/api/users"))).isNull();
+    }
+
+    @Test
+    void ignoreContextPath() {
+        MockHttpServletRequest request = request("GET", "/users-ms/api/users");
+        request.setContextPath("/users-ms");
+
+        assertThat(EndpointClass.of(request)).isEqualTo(EndpointClass.LIST);
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        return new MockHttpServletRequest(method, path);
+    }
+}
@@ -0,0 +1,95 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+class GradientLimiterTest {
+
+    ConcurrencyLimitProperties properties;
+    AtomicLong now;
+    GradientLimiter limiter;
+
+    @BeforeEach
+    void setup() {
+        properties = new ConcurrencyLimitProperties();
+        now = new AtomicLong();
+        limiter = new GradientLimiter(properties, new ConcurrencyLimitProperties.Limit(10, 2, 100), now::get);
+    }
+
+    @Test
+    void rejectOverTheLimitUntilReleased() {
+        List<GradientLimiter.Permit> permits = acquire(10);
+
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.getInFlight()).isEqualTo(10);
+
+        permits.getFirst().release(false);
+        permits.getFirst().release(false);
+
+        assertThat(limiter.getInFlight()).isEqualTo(9);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void growWhileLatencyIsSteadyAndLimitIsUsed() {
+        for (int i = 0; i < 20; i++) {
+            releaseAll(acquire(limiter.getLimit()), 10);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    void notGrowWhenLessThanHalfTheLimitIsUsed() {
+        for (int i = 0; i < 50; i++) {
+            releaseAll(acquire(2), 10);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinkWhenLatencyGrows() {
+        for (int i = 0; i < 20; i++) {
+            releaseAll(acquire(limiter.getLimit()), 10);
+        }
+        int steady = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            releaseAll(acquire(limiter.getLimit()), 100);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(steady);
+    }
+
+    @Test
+    void backOffWhenDroppedButNotUnderMinimum() {
+        for (int i = 0; i < 50; i++) {
+            GradientLimiter.Permit permit = limiter.tryAcquire();
+            permit.release(true);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    private List<GradientLimiter.Permit> acquire(int permits) {
+        List<GradientLimiter.Permit> acquired = new ArrayList<>();
+        for (int i = 0; i < permits; i++) {
+            acquired.add(limiter.tryAcquire());
+        }
+        assertThat(acquired).doesNotContainNull();
+        return acquired;
+    }
+
+    private void releaseAll(List<GradientLimiter.Permit> permits, long latencyMillis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        permits.forEach(permit -> permit.release(false));
+    }
+}
@@ -0,0 +1,213 @@
+package com.springcloud.demo.usersmicroservice.limiter;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriorityAdmissionTest {
+
+    @Mock
+    HikariDataSource pool;
+
+    @Mock
+    HikariPoolMXBean usage;
+
+    @AfterEach
+    void leaveAdmission() {
+        PriorityAdmission.connected();
+    }
+
+    @Test
+    void admitLowPriorityWhileMoreThanReservedConnectionsAreLeft() throws InterruptedException {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ZERO);
+        inUse(1, 0);
+
+        assertThat(admission.enter(true)).isTrue();
+    }
+
+    @Test
+    void rejectLowPriorityAfterMaxQueueTimeWhenOnlyReservedConnectionsAreLeft() throws InterruptedException {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ofMillis(50));
+        inUse(1, 1);
+
+        long start = System.nanoTime();
+        assertThat(admission.enter(true)).isFalse();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(admission.getWaiting()).isZero();
+    }
+
+    @Test
+    void admitHighPriorityWhenNoConnectionIsLeft() throws InterruptedException {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ZERO);
+        inUse(5, 10);
+
+        assertThat(admission.enter(false)).isTrue();
+        assertThat(admission.enter(true)).isFalse();
+    }
+
+    @Test
+    void countPoolNotStartedAsFree() throws InterruptedException {
+        try (HikariDataSource notStarted = new HikariDataSource()) {
+            notStarted.setMaximumPoolSize(5);
+            PriorityAdmission admission = new PriorityAdmission(() -> List.of(notStarted), 3, Duration.ZERO);
+
+            assertThat(admission.enter(true)).isTrue();
+        }
+    }
+
+    @Test
+    void reserveConnectionsInEachPool() throws InterruptedException {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool, pool), 3, Duration.ZERO);
+        inUse(1, 0);
+
+        // 8 connections left for 6 reserved
+        assertThat(admission.enter(true)).isTrue();
+
+        inUse(2, 0);
+        assertThat(admission.enter(true)).isFalse();
+    }
+
+    @Test
+    void admitQueuedLowPriorityWhenAConnectionIsReleased() throws Exception {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ofSeconds(5));
+        AtomicInteger active = new AtomicInteger(2);
+        inUse(0, 0);
+        given(usage.getActiveConnections()).willAnswer(invocation -> active.get());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return admission.enter(true);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+
+            awaitWaiting(admission, 1);
+            assertThat(queued).isNotDone();
+
+            active.set(1);
+            admission.exit();
+
+            assertThat(queued.get(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(admission.getWaiting()).isZero();
+        }
+    }
+
+    @Test
+    void admitABurstOfLowPriorityOnlyOnTheConnectionsLeft() throws Exception {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ofMillis(100));
+        inUse(0, 0);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> arrivals = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                arrivals.add(executor.submit(() -> {
+                    start.await();
+                    return admission.enter(true);
+                }));
+            }
+            start.countDown();
+
+            int admitted = 0;
+            for (Future<Boolean> arrival : arrivals) {
+                admitted += arrival.get(1, TimeUnit.SECONDS) ? 1 : 0;
+            }
+
+            // none of them took a connection yet, 5 in the pool for 3 reserved
+            assertThat(admitted).isEqualTo(2);
+            assertThat(admission.getPending()).isEqualTo(2);
+            assertThat(admission.getWaiting()).isZero();
+        }
+    }
+
+    @Test
+    void keepCountingALowPriorityRequestOnceItTookAConnection() throws Exception {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ZERO);
+        AtomicInteger active = new AtomicInteger();
+        inUse(0, 0);
+        given(usage.getActiveConnections()).willAnswer(invocation -> active.get());
+
+        assertThat(admission.enter(true)).isTrue();
+        active.incrementAndGet();
+        PriorityAdmission.connected();
+
+        assertThat(admission.getPending()).isZero();
+        assertThat(admission.enter(true)).isTrue();
+        assertThat(admission.enter(true)).isFalse();
+    }
+
+    @Test
+    void admitQueuedLowPriorityWhenAPendingOneLeavesWithoutAConnection() throws Exception {
+        PriorityAdmission admission = new PriorityAdmission(() -> List.of(pool), 3, Duration.ofSeconds(5));
+        inUse(0, 0);
+
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // the two connections over the reserved ones
+            assertThat(first.submit(() -> admission.enter(true)).get()).isTrue();
+            assertThat(admission.enter(true)).isTrue();
+
+            CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> enter(admission), executor);
+            awaitWaiting(admission, 1);
+            assertThat(queued).isNotDone();
+
+            first.submit((Callable<Void>) () -> {
+                admission.exit();
+                return null;
+            }).get();
+
+            assertThat(queued.get(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(admission.getPending()).isEqualTo(2);
+        } finally {
+            first.shutdownNow();
+        }
+    }
+
+    /**
+     * Polls until the requests are queued, a fixed sleep is not enough on a loaded machine
+     */
+    private static void awaitWaiting(PriorityAdmission admission, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (admission.getWaiting() != waiting && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(admission.getWaiting()).isEqualTo(waiting);
+    }
+
+    private static boolean enter(PriorityAdmission admission) {
+        try {
+            return admission.enter(true);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void inUse(int active, int awaiting) {
+        given(pool.getMaximumPoolSize()).willReturn(5);
+        given(pool.getHikariPoolMXBean()).willReturn(usage);
+        given(usage.getActiveConnections()).willReturn(active);
+        given(usage.getThreadsAwaitingConnection()).willReturn(awaiting);
+    }
+}
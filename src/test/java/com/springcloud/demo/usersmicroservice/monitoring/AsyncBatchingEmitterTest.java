@@ -0,0 +1,81 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.SegmentImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class AsyncBatchingEmitterTest {
+
+    Emitter delegate;
+    SimpleMeterRegistry meterRegistry;
+    CountDownLatch release;
+    AsyncBatchingEmitter emitter;
+
+    @BeforeEach
+    void setup() {
+        delegate = mock(Emitter.class);
+        meterRegistry = new SimpleMeterRegistry();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        release.countDown();
+        emitter.close();
+    }
+
+    @Test
+    void sendOnEmitterThread() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        willAnswer(invocation -> {
+            assertThat(Thread.currentThread()).isNotSameAs(caller);
+            return true;
+        }).given(delegate).sendSegment(any());
+        emitter = new AsyncBatchingEmitter(delegate, 10, 5, meterRegistry);
+
+        assertThat(emitter.sendSegment(segment())).isTrue();
+        assertThat(emitter.sendSegment(segment())).isTrue();
+        emitter.close();
+
+        verify(delegate, times(2)).sendSegment(any());
+    }
+
+    @Test
+    void dropSegmentsWhenQueueFull() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        willAnswer(invocation -> {
+            sending.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        }).given(delegate).sendSegment(any());
+        emitter = new AsyncBatchingEmitter(delegate, 1, 1, meterRegistry);
+
+        emitter.sendSegment(segment());
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // emitter thread busy, one queued and the next one dropped
+        assertThat(emitter.sendSegment(segment())).isTrue();
+        assertThat(emitter.sendSegment(segment())).isFalse();
+        assertThat(meterRegistry.get("users.tracing.emitter.dropped").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("users.tracing.emitter.queue.size").gauge().value()).isEqualTo(1);
+
+        release.countDown();
+        emitter.close();
+        verify(delegate, times(2)).sendSegment(any());
+    }
+
+    private Segment segment() {
+        return new SegmentImpl(AWSXRay.getGlobalRecorder(), "test");
+    }
+}
@@ -0,0 +1,45 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class DataSourceTestIT {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void useOnlyOnePool() throws Exception {
+        assertThat(applicationContext.getBeansOfType(HikariDataSource.class)).hasSize(1);
+
+        HikariDataSource pool = applicationContext.getBean(HikariDataSource.class);
+        assertThat(dataSource.unwrap(HikariDataSource.class)).isSameAs(pool);
+        assertThat(pool.getPoolName()).isEqualTo("users-ms");
+        assertThat(pool.getMaximumPoolSize()).isEqualTo(10);
+        assertThat(pool.getMinimumIdle()).isEqualTo(2);
+    }
+
+    @Test
+    void publishPoolMetrics() {
+        assertThat(meterRegistry.get("hikaricp.connections.active").tag("pool", "users-ms").gauge()).isNotNull();
+        assertThat(meterRegistry.get("hikaricp.connections.pending").tag("pool", "users-ms").gauge()).isNotNull();
+        assertThat(meterRegistry.get("hikaricp.connections.acquire").tag("pool", "users-ms").timer()).isNotNull();
+    }
+}
@@ -0,0 +1,39 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricsTestIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void exposeServiceAndExceptionMetrics() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + UUID.randomUUID()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_FOUND.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_service_seconds_bucket{class=\"com.springcloud.demo.usersmicroservice.users.service.UserService\",exception=\"NotFoundException\",method=\"findJsonById\"")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_service_phase_seconds_bucket{operation=\"findById\",phase=\"db\"")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("users_exceptions_handled_total{exception=\"NotFoundException\",status=\"404\"} 1.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("cache_gets_total{cache=\"users\",result=\"miss\"}")));
+    }
+}
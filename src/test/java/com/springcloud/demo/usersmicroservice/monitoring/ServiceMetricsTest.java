@@ -0,0 +1,50 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics.Phase;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ServiceMetricsTest {
+
+    SimpleMeterRegistry meterRegistry;
+    ServiceMetrics serviceMetrics;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        serviceMetrics = new ServiceMetrics(meterRegistry);
+    }
+
+    @Test
+    void recordPhaseOfOperation() {
+        String result = serviceMetrics.record("findById", Phase.DB, () -> "user");
+        serviceMetrics.record("findById", Phase.DB, () -> "user");
+
+        assertThat(result).isEqualTo("user");
+        assertThat(timer("findById", "db").count()).isEqualTo(2);
+        assertThat(meterRegistry.find(ServiceMetrics.PHASE_TIMER).tag("phase", "mapping").timer()).isNull();
+    }
+
+    @Test
+    void recordAsyncPhaseWhenFutureCompletes() {
+        CompletableFuture<String> hash = new CompletableFuture<>();
+
+        CompletableFuture<String> result = serviceMetrics.recordAsync("create", Phase.HASHING, () -> hash);
+        assertThat(timer("create", "hashing").count()).isZero();
+
+        hash.complete("hash");
+
+        assertThat(result.join()).isEqualTo("hash");
+        assertThat(timer("create", "hashing").count()).isEqualTo(1);
+    }
+
+    private Timer timer(String operation, String phase) {
+        return meterRegistry.get(ServiceMetrics.PHASE_TIMER).tag("operation", operation).tag("phase", phase).timer();
+    }
+}
@@ -0,0 +1,103 @@
+package com.springcloud.demo.usersmicroservice.monitoring;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorder;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SqlTracingDataSourceTest {
+
+    AWSXRayRecorder previousRecorder;
+    DriverManagerDataSource database;
+    Segment segment;
+
+    @BeforeEach
+    void setup() {
+        previousRecorder = AWSXRay.getGlobalRecorder();
+        AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard().withEmitter(mock(Emitter.class)).build());
+
+        database = new DriverManagerDataSource("jdbc:h2:mem:sqlTracing;DB_CLOSE_DELAY=-1");
+        segment = AWSXRay.beginSegment("test");
+    }
+
+    @AfterEach
+    void restore() {
+        AWSXRay.clearTraceEntity();
+        AWSXRay.setGlobalRecorder(previousRecorder);
+    }
+
+    @Test
+    void notWrapConnectionsOfUnsampledSegments() throws SQLException {
+        segment.setSampled(false);
+        SqlTracingDataSource dataSource = new SqlTracingDataSource(database, Duration.ZERO, false);
+
+        try (Connection connection = dataSource.getConnection()) {
+            assertThat(Proxy.isProxyClass(connection.getClass())).isFalse();
+        }
+    }
+
+    @Test
+    void notWrapConnectionsWithoutSegment() throws SQLException {
+        AWSXRay.clearTraceEntity();
+        SqlTracingDataSource dataSource = new SqlTracingDataSource(database, Duration.ZERO, false);
+
+        try (Connection connection = dataSource.getConnection()) {
+            assertThat(Proxy.isProxyClass(connection.getClass())).isFalse();
+        }
+    }
+
+    @Test
+    void recordStatementsOverThreshold() throws SQLException {
+        SqlTracingDataSource dataSource = new SqlTracingDataSource(database, Duration.ZERO, true);
+
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+            statement.setInt(1, 1);
+            statement.executeQuery().close();
+        }
+
+        assertThat(segment.getSubsegments()).hasSize(1);
+        Subsegment subsegment = segment.getSubsegments().getFirst();
+        assertThat(subsegment.getNamespace()).isEqualTo("remote");
+        assertThat(subsegment.getSql()).containsEntry("sanitized_query", "SELECT ?");
+        assertThat(subsegment.getEndTime()).isGreaterThanOrEqualTo(subsegment.getStartTime());
+    }
+
+    @Test
+    void notRecordFastStatements() throws SQLException {
+        SqlTracingDataSource dataSource = new SqlTracingDataSource(database, Duration.ofHours(1), false);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+
+        assertThat(segment.getSubsegments()).isEmpty();
+    }
+
+    @Test
+    void alwaysRecordFailedStatements() throws SQLException {
+        SqlTracingDataSource dataSource = new SqlTracingDataSource(database, Duration.ofHours(1), false);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            assertThatThrownBy(() -> statement.execute("SELECT * FROM missing_table")).isInstanceOf(SQLException.class);
+        }
+
+        assertThat(segment.getSubsegments()).hasSize(1);
+        assertThat(segment.getSubsegments().getFirst().isFault()).isTrue();
+    }
+}
@@ -0,0 +1,111 @@
+package com.springcloud.demo.usersmicroservice.password;
+
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    PasswordHasherProperties properties;
+    SimpleMeterRegistry meterRegistry;
+    CountDownLatch release;
+    PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setup() {
+        properties = new PasswordHasherProperties();
+        properties.setThreads(1);
+        properties.setQueueCapacity(1);
+        properties.setRetryAfter(Duration.ofSeconds(3));
+        meterRegistry = new SimpleMeterRegistry();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        passwordHasher.destroy();
+    }
+
+    @Test
+    void encodeOnHasherThread() {
+        passwordHasher = new PasswordHasher(new BCryptPasswordEncoder(4), properties, meterRegistry, Runnable::run);
+
+        String hash = passwordHasher.encode("Abcd1234.").join();
+
+        assertThat(new BCryptPasswordEncoder(4).matches("Abcd1234.", hash)).isTrue();
+        assertThat(meterRegistry.get("users.password.hash.duration").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectWhenThreadsBusyAndQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        passwordHasher = new PasswordHasher(blockingEncoder(started), properties, meterRegistry, Runnable::run);
+
+        CompletableFuture<String> running = passwordHasher.encode("first");
+        started.await();
+        CompletableFuture<String> queued = passwordHasher.encode("second");
+
+        ServiceUnavailableException e = Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            passwordHasher.encode("third");
+        });
+
+        assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(3));
+        assertThat(meterRegistry.get("users.password.hash.rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("executor.queued").tag("name", "users.password.hash").gauge().value()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.join()).isEqualTo("hash-first");
+        assertThat(queued.join()).isEqualTo("hash-second");
+    }
+
+    @Test
+    void encodeAllInOrderHashingOnCallerWhenQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        passwordHasher = new PasswordHasher(blockingEncoder(started), properties, meterRegistry, Runnable::run);
+
+        CompletableFuture<String> running = passwordHasher.encode("first");
+        started.await();
+        CompletableFuture<String> queued = passwordHasher.encode("second");
+
+        CompletableFuture<List<String>> batch = CompletableFuture.supplyAsync(() -> passwordHasher.encodeAll(List.of("a", "b", "c")));
+        release.countDown();
+
+        assertThat(batch.get()).containsExactly("hash-a", "hash-b", "hash-c");
+        assertThat(running.join()).isEqualTo("hash-first");
+        assertThat(queued.join()).isEqualTo("hash-second");
+        assertThat(meterRegistry.get("users.password.hash.rejected").counter().count()).isZero();
+    }
+
+    private PasswordEncoder blockingEncoder(CountDownLatch started) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "hash-" + rawPassword;
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return false;
+            }
+        };
+    }
+}
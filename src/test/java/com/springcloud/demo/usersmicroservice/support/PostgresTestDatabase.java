@@ -0,0 +1,51 @@
+package com.springcloud.demo.usersmicroservice.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Embedded PostgreSQL for the integration tests of the statements the test profile runs on H2 with a fallback.
+ * Started once for every test class using it, the schema is created by the Flyway migrations used in production.
+ */
+public final class PostgresTestDatabase {
+
+    private static EmbeddedPostgres postgres;
+
+    private PostgresTestDatabase() {}
+
+    /**
+     * Points the datasource of the test profile to the embedded PostgreSQL
+     */
+    public static void register(DynamicPropertyRegistry registry) {
+        EmbeddedPostgres database = start();
+
+        registry.add("spring.datasource.url", () -> database.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "none");
+    }
+
+    private static synchronized EmbeddedPostgres start() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.builder().start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to start embedded PostgreSQL", e);
+            }
+
+            EmbeddedPostgres started = postgres;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    started.close();
+                } catch (IOException e) {
+                    // the process is exiting
+                }
+            }));
+        }
+        return postgres;
+    }
+}
@@ -2,6 +2,7 @@ package com.springcloud.demo.usersmicroservice.userroles.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
+import com.springcloud.demo.usersmicroservice.monitoring.ExceptionMetrics;
 import com.springcloud.demo.usersmicroservice.monitoring.TracingExceptions;
 import com.springcloud.demo.usersmicroservice.userroles.dto.AddRoleDTO;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
@@ -36,6 +37,9 @@ class UserRoleControllerTest {
     @MockBean
     private TracingExceptions tracingExceptions;
 
+    @MockBean
+    private ExceptionMetrics exceptionMetrics;
+
     @Nested
     class AddUserRole {
 
@@ -83,7 +83,7 @@ public class UserRoleTestIT {
             UserRole userRoleCreated = userRoleRepository.findById(UUID.fromString(idRoleCreated)).orElseThrow();
             assertThat(userRoleCreated.getRole()).isEqualTo(Roles.OWNER.name());
             assertThat(userRoleCreated.getUser().getId()).isEqualTo(user1.getId());
-
+            assertThat(userRepository.findCachedVersionById(user1.getId())).contains(1L);
         }
 
         @Test
@@ -186,6 +186,20 @@ public class UserRoleTestIT {
             assertThat(userRoles.size()).isEqualTo(2);
         }
 
+        @Test
+        void errorWhenUserRoleIsOfAnotherUser() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .delete("/api/users/roles/" + newUserRole.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header("X-UserId", UUID.randomUUID().toString())
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.FORBIDDEN.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Not have permission to delete another user"));
+
+            List<UserRole> userRoles = userRoleRepository.findAll();
+            assertThat(userRoles.size()).isEqualTo(2);
+        }
+
         @Test
         void errorWhenUserRoleIdIsNotValidUUID() throws Exception {
             mockMvc.perform(MockMvcRequestBuilders
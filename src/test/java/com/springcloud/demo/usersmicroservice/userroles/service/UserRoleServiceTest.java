@@ -1,17 +1,21 @@
 package com.springcloud.demo.usersmicroservice.userroles.service;
 
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
+import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
 import com.springcloud.demo.usersmicroservice.exceptions.ForbiddenException;
 import com.springcloud.demo.usersmicroservice.exceptions.NotFoundException;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
 import com.springcloud.demo.usersmicroservice.userroles.dto.AddRoleDTO;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
-import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleInsertView;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
 import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
-import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
 import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
 import static org.assertj.core.api.Assertions.*;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -19,11 +23,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.BDDMockito.*;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,6 +39,12 @@ class UserRoleServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private ServiceMetrics serviceMetrics = new ServiceMetrics(new SimpleMeterRegistry());
+
     @InjectMocks
     private UserRoleService userRoleService;
 
@@ -44,17 +54,17 @@ class UserRoleServiceTest {
         @Test
         void addUserRole(){
             AddRoleDTO addRoleDTO = new AddRoleDTO(Roles.OWNER.name());
-            User userFound = new User(UUID.randomUUID(), "user1","user1@gmail.com","encrypted_password", LocalDateTime.now(), LocalDateTime.now(), List.of());
-            UserRole userRoleCreated = new UserRole(UUID.randomUUID(), Roles.OWNER.name(), LocalDateTime.now(), userFound);
+            UUID idUser = UUID.randomUUID();
+            UserRoleView userRoleCreated = new UserRoleView(idUser, UUID.randomUUID(), Roles.OWNER.name(), LocalDateTime.now());
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(userFound));
-            given(userRoleRepository.findByUserAndRole(any(User.class),anyString())).willReturn(Optional.empty());
-            given(userRoleRepository.save(any(UserRole.class))).willReturn(userRoleCreated);
+            given(userRoleRepository.insertIfAbsent(any(UUID.class), anyString())).willReturn(new UserRoleInsertView(true, userRoleCreated));
 
-            UserRoleResponseDTO response = userRoleService.addUserRole(userFound.getId().toString(), addRoleDTO);
+            UserRoleResponseDTO response = userRoleService.addUserRole(idUser.toString(), addRoleDTO);
 
-            verify(userRoleRepository).save(argThat(args -> args.getUser().getId().equals(userFound.getId())));
-            assertThat(response.getId()).isEqualTo(userRoleCreated.getId());
+            verify(userRoleRepository).insertIfAbsent(idUser, Roles.OWNER.name());
+            verify(userRepository, never()).findById(any());
+            verify(eventPublisher).publishEvent(new UserChangedEvent(idUser));
+            assertThat(response.getId()).isEqualTo(userRoleCreated.id());
             assertThat(response.getRole()).isEqualTo(addRoleDTO.getRole());
         }
 
@@ -62,33 +72,40 @@ class UserRoleServiceTest {
         void errorWhenUserNotExist(){
             AddRoleDTO addRoleDTO = new AddRoleDTO(Roles.OWNER.name());
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.empty());
+            given(userRoleRepository.insertIfAbsent(any(UUID.class), anyString())).willReturn(new UserRoleInsertView(false, null));
 
             NotFoundException e = Assertions.assertThrows(NotFoundException.class, ()->{
                 userRoleService.addUserRole(UUID.randomUUID().toString(), addRoleDTO);
             });
 
-            verify(userRoleRepository, never()).save(any());
+            verify(eventPublisher, never()).publishEvent(any());
             assertThat(e.getMessage()).contains("Not found user");
         }
 
         @Test
         void errorWhenUserAlreadyHasSameRole(){
             AddRoleDTO addRoleDTO = new AddRoleDTO(Roles.OWNER.name());
-            User userFound = new User(UUID.randomUUID(), "user1","user1@gmail.com","encrypted_password", LocalDateTime.now(), LocalDateTime.now(), List.of());
-            UserRole userRoleFound = new UserRole(UUID.randomUUID(), Roles.OWNER.name(), LocalDateTime.now(), userFound);
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(userFound));
-            given(userRoleRepository.findByUserAndRole(any(User.class), anyString())).willReturn(Optional.of(userRoleFound));
+            given(userRoleRepository.insertIfAbsent(any(UUID.class), anyString())).willReturn(new UserRoleInsertView(true, null));
 
             ForbiddenException e = Assertions.assertThrows(ForbiddenException.class, ()->{
                 userRoleService.addUserRole(UUID.randomUUID().toString(), addRoleDTO);
             });
 
-            verify(userRoleRepository, never()).save(any());
-            verify(userRoleRepository).findByUserAndRole(argThat(user -> user.getId().equals(userFound.getId())), argThat(role -> role.equals(addRoleDTO.getRole())));
+            verify(eventPublisher, never()).publishEvent(any());
             assertThat(e.getMessage()).contains("User already has same role");
         }
+
+        @Test
+        void errorWhenRoleNotExist(){
+            AddRoleDTO addRoleDTO = new AddRoleDTO("OTHER_ROLE");
+
+            Assertions.assertThrows(BadRequestException.class, ()->{
+                userRoleService.addUserRole(UUID.randomUUID().toString(), addRoleDTO);
+            });
+
+            verify(userRoleRepository, never()).insertIfAbsent(any(), any());
+        }
     }
 
     @Nested
@@ -96,16 +113,17 @@ class UserRoleServiceTest {
 
         @Test
         void deleteUserRole(){
-            User userOfRole = User.builder().id(UUID.randomUUID()).name("user1").build();
-            UserRole userRoleFound = new UserRole(UUID.randomUUID(), Roles.OWNER.name(), LocalDateTime.now(), userOfRole);
+            UUID idRole = UUID.randomUUID();
+            UUID idUser = UUID.randomUUID();
 
-            given(userRoleRepository.findById(any(UUID.class))).willReturn(Optional.of(userRoleFound));
-            willDoNothing().given(userRoleRepository).delete(any(UserRole.class));
+            given(userRoleRepository.deleteByIdAndUserId(idRole, idUser)).willReturn(1);
 
-            SimpleResponseDTO response =  userRoleService.deleteUserRole(userRoleFound.getId().toString(), userOfRole.getId().toString());
+            SimpleResponseDTO response =  userRoleService.deleteUserRole(idRole.toString(), idUser.toString());
 
-            verify(userRoleRepository).findById(argThat(uuid -> uuid.equals(userRoleFound.getId())));
-            verify(userRoleRepository).delete(argThat(userRole -> userRole.getId().equals(userRoleFound.getId())));
+            verify(userRoleRepository, never()).findById(any());
+            verify(userRoleRepository, never()).existsById(any());
+            verify(userRepository).incrementVersion(idUser);
+            verify(eventPublisher).publishEvent(new UserChangedEvent(idUser));
             assertThat(response.isOk()).isTrue();
         }
 
@@ -113,16 +131,31 @@ class UserRoleServiceTest {
         void errorWhenNotFoundUserRoleById(){
             UUID idToDelete = UUID.randomUUID();
 
-            given(userRoleRepository.findById(any(UUID.class))).willReturn(Optional.empty());
+            given(userRoleRepository.deleteByIdAndUserId(any(UUID.class), any(UUID.class))).willReturn(0);
+            given(userRoleRepository.existsById(idToDelete)).willReturn(false);
 
             NotFoundException e = Assertions.assertThrows(NotFoundException.class, ()->{
                 userRoleService.deleteUserRole(idToDelete.toString(), UUID.randomUUID().toString());
             });
 
-            verify(userRoleRepository).findById(argThat(uuid -> uuid.equals(idToDelete)));
-            verify(userRoleRepository,never()).delete(any());
+            verify(eventPublisher, never()).publishEvent(any());
             assertThat(e.getMessage()).contains("Not found user_role with id");
         }
+
+        @Test
+        void errorWhenUserRoleIsOfAnotherUser(){
+            UUID idToDelete = UUID.randomUUID();
+
+            given(userRoleRepository.deleteByIdAndUserId(any(UUID.class), any(UUID.class))).willReturn(0);
+            given(userRoleRepository.existsById(idToDelete)).willReturn(true);
+
+            ForbiddenException e = Assertions.assertThrows(ForbiddenException.class, ()->{
+                userRoleService.deleteUserRole(idToDelete.toString(), UUID.randomUUID().toString());
+            });
+
+            verify(userRepository, never()).incrementVersion(any());
+            assertThat(e.getMessage()).contains("Not have permission to delete another user");
+        }
     }
 
 }
\ No newline at end of file
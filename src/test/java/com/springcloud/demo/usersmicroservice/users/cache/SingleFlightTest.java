@@ -0,0 +1,146 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SingleFlightTest {
+
+    SingleFlightProperties properties;
+    SimpleMeterRegistry meterRegistry;
+    SingleFlight<String, String> singleFlight;
+    ExecutorService executor;
+    AtomicInteger loads;
+    CountDownLatch loading;
+    CountDownLatch release;
+
+    @BeforeEach
+    void setup() {
+        properties = new SingleFlightProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight<>("users.by.email", properties, meterRegistry);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        loads = new AtomicInteger();
+        loading = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> "user1")), executor);
+        loading.await();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> "other")), executor);
+        awaitCollapsed(1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("user1");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("user1");
+        assertThat(loads).hasValue(1);
+        assertThat(count("load")).isEqualTo(1);
+    }
+
+    @Test
+    void loadAgainOnceDone() {
+        assertThat(singleFlight.load("user1@gmail.com", () -> "first")).isEqualTo("first");
+        assertThat(singleFlight.load("user1@gmail.com", () -> "second")).isEqualTo("second");
+
+        assertThat(count("load")).isEqualTo(2);
+        assertThat(count("collapsed")).isZero();
+    }
+
+    @Test
+    void notShareLoadsOfOtherKeys() throws Exception {
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> "user1")), executor);
+        loading.await();
+
+        assertThat(singleFlight.load("user2@gmail.com", () -> "user2")).isEqualTo("user2");
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("user1");
+    }
+
+    @Test
+    void waitingCallersGetTheErrorOfTheLoad() throws Exception {
+        IllegalStateException error = new IllegalStateException("database down");
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> {
+            throw error;
+        })), executor);
+        loading.await();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", () -> "other"), executor);
+        awaitCollapsed(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCause(error);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCause(error);
+        assertThat(singleFlight.load("user1@gmail.com", () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    void failWhenLoadOfAnotherCallerTimesOut() throws Exception {
+        properties.setTimeout(Duration.ofMillis(50));
+        CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> "user1")), executor);
+        loading.await();
+
+        assertThatThrownBy(() -> singleFlight.load("user1@gmail.com", () -> "other"))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .hasMessageContaining("users.by.email");
+        assertThat(count("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void loadEveryTimeWhenDisabled() throws Exception {
+        properties.setEnabled(false);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.load("user1@gmail.com", blockingLoad(() -> "user1")), executor);
+        loading.await();
+
+        assertThat(singleFlight.load("user1@gmail.com", () -> "other")).isEqualTo("other");
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("user1");
+        assertThat(count("load")).isZero();
+    }
+
+    /**
+     * Counts the load and waits for the test to release it
+     */
+    private Supplier<String> blockingLoad(Supplier<String> value) {
+        return () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return value.get();
+        };
+    }
+
+    private void awaitCollapsed(int callers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count("collapsed") < callers && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("users.single.flight").tag("name", "users.by.email").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,160 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserAuthCacheTest {
+
+    @Mock
+    UserRepository userRepository;
+
+    UserAuthCacheProperties properties;
+    SimpleMeterRegistry meterRegistry;
+    UserAuthCache userAuthCache;
+    UserWithRoleView user;
+
+    @BeforeEach
+    void setup() {
+        properties = new UserAuthCacheProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        userAuthCache = new UserAuthCache(userRepository, properties, new SingleFlight<>("users.by.email", new SingleFlightProperties(), meterRegistry), meterRegistry, Runnable::run);
+
+        user = new UserWithRoleView(UUID.randomUUID(), "User1", "user1@gmail.com", "encrypted_password", LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.randomUUID(), Roles.CUSTOMER.name(), LocalDateTime.now());
+    }
+
+    @Test
+    void loadFromDatabaseOnlyOnFirstCall() {
+        given(userRepository.findViewByEmailIgnoreCase("user1@gmail.com")).willReturn(List.of(user));
+
+        Optional<UserAuthResponseDTO> first = userAuthCache.get("user1@gmail.com");
+        Optional<UserAuthResponseDTO> second = userAuthCache.get(" User1@Gmail.com ");
+
+        verify(userRepository, times(1)).findViewByEmailIgnoreCase(anyString());
+        assertThat(first).isPresent();
+        assertThat(second).contains(first.get());
+        assertThat(second.get().getRoles()).hasSize(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "users.auth").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void notCacheMissingUsers() {
+        given(userRepository.findViewByEmailIgnoreCase(anyString())).willReturn(List.of());
+
+        assertThat(userAuthCache.get("user1@gmail.com")).isEmpty();
+        assertThat(userAuthCache.get("user1@gmail.com")).isEmpty();
+
+        verify(userRepository, times(2)).findViewByEmailIgnoreCase(anyString());
+    }
+
+    @Test
+    void reloadAfterUserChanged() {
+        given(userRepository.findViewByEmailIgnoreCase(anyString())).willReturn(List.of(user));
+
+        userAuthCache.get("user1@gmail.com");
+        userAuthCache.onUserChanged(new UserChangedEvent(user.id()));
+        userAuthCache.get("user1@gmail.com");
+
+        verify(userRepository, times(2)).findViewByEmailIgnoreCase(anyString());
+        assertThat(meterRegistry.get("users.auth.cache.invalidations").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void notInvalidateOtherUsers() {
+        given(userRepository.findViewByEmailIgnoreCase(anyString())).willReturn(List.of(user));
+
+        userAuthCache.get("user1@gmail.com");
+        userAuthCache.onUserChanged(new UserChangedEvent(UUID.randomUUID()));
+        userAuthCache.get("user1@gmail.com");
+
+        verify(userRepository, times(1)).findViewByEmailIgnoreCase(anyString());
+    }
+
+    @Test
+    void reloadOldEmailAfterEmailChanged() {
+        given(userRepository.findViewByEmailIgnoreCase("user1@gmail.com")).willReturn(List.of(user), List.of());
+
+        userAuthCache.get("user1@gmail.com");
+        userAuthCache.onUserChanged(new UserChangedEvent(user.id()));
+
+        assertThat(userAuthCache.get("user1@gmail.com")).isEmpty();
+        assertThat(meterRegistry.get("users.auth.cache.invalidations").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void notCacheUserChangedWhileLoading() {
+        UserWithRoleView changed = new UserWithRoleView(user.id(), "User1", "user1@gmail.com", "new_password", user.createdAt(), LocalDateTime.now(), 1L, user.roleId(), user.role(), user.roleCreatedAt());
+        given(userRepository.findViewByEmailIgnoreCase(anyString()))
+                .willAnswer(invocation -> {
+                    userAuthCache.onUserChanged(new UserChangedEvent(user.id()));
+                    return List.of(user);
+                })
+                .willReturn(List.of(changed));
+
+        assertThat(userAuthCache.get("user1@gmail.com")).get().extracting(UserAuthResponseDTO::getPassword).isEqualTo("new_password");
+        assertThat(userAuthCache.get("user1@gmail.com")).get().extracting(UserAuthResponseDTO::getPassword).isEqualTo("new_password");
+
+        verify(userRepository, times(2)).findViewByEmailIgnoreCase(anyString());
+    }
+
+    @Test
+    void notShareQueryStartedBeforeUserChanged() throws Exception {
+        properties.setEnabled(false);
+        UserWithRoleView changed = new UserWithRoleView(user.id(), "User1", "user1@gmail.com", "new_password", user.createdAt(), LocalDateTime.now(), 1L, user.roleId(), user.role(), user.roleCreatedAt());
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        given(userRepository.findViewByEmailIgnoreCase(anyString()))
+                .willAnswer(invocation -> {
+                    querying.countDown();
+                    committed.await();
+                    return List.of(user);
+                })
+                .willReturn(List.of(changed));
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<UserAuthResponseDTO>> before = executor.submit(() -> userAuthCache.get("user1@gmail.com"));
+            querying.await();
+
+            userAuthCache.onUserChanged(new UserChangedEvent(user.id()));
+            Future<Optional<UserAuthResponseDTO>> after = executor.submit(() -> userAuthCache.get("user1@gmail.com"));
+
+            assertThat(after.get(1, TimeUnit.SECONDS)).get().extracting(UserAuthResponseDTO::getPassword).isEqualTo("new_password");
+            committed.countDown();
+            assertThat(before.get(1, TimeUnit.SECONDS)).get().extracting(UserAuthResponseDTO::getPassword).isEqualTo("encrypted_password");
+        }
+
+        verify(userRepository, times(2)).findViewByEmailIgnoreCase(anyString());
+    }
+
+    @Test
+    void alwaysLoadFromDatabaseWhenDisabled() {
+        properties.setEnabled(false);
+        given(userRepository.findViewByEmailIgnoreCase(anyString())).willReturn(List.of(user));
+
+        userAuthCache.get("user1@gmail.com");
+        userAuthCache.get("user1@gmail.com");
+
+        verify(userRepository, times(2)).findViewByEmailIgnoreCase(anyString());
+    }
+}
@@ -0,0 +1,102 @@
+package com.springcloud.demo.usersmicroservice.users.cache;
+
+import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+
+class UserJsonCacheTest {
+
+    UserJsonCacheProperties properties;
+    UserAuthCacheProperties authCacheProperties;
+    SimpleMeterRegistry meterRegistry;
+    UserJsonCache userJsonCache;
+    UserResponseDTO user;
+    AtomicInteger mapped;
+
+    @BeforeEach
+    void setup() {
+        properties = new UserJsonCacheProperties();
+        authCacheProperties = new UserAuthCacheProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        userJsonCache = new UserJsonCache(properties, authCacheProperties, Jackson2ObjectMapperBuilder.json().build(), meterRegistry);
+
+        UserRoleResponseDTO role = UserRoleResponseDTO.builder().id(UUID.randomUUID()).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.of(2024, 5, 1, 10, 30)).build();
+        user = UserResponseDTO.builder().id(UUID.randomUUID()).name("User1").email("user1@gmail.com").roles(List.of(role)).createdAt(LocalDateTime.of(2024, 5, 1, 10, 30)).lastUpdated(LocalDateTime.of(2024, 5, 1, 10, 30)).version(2L).build();
+        mapped = new AtomicInteger();
+    }
+
+    @Test
+    void encodeUserOncePerVersion() {
+        UserJsonCache.Json first = userJsonCache.user(user.getId(), 2L, mapping());
+        UserJsonCache.Json second = userJsonCache.user(user.getId(), 2L, mapping());
+
+        assertThat(mapped).hasValue(1);
+        assertThat(second).isSameAs(first);
+        assertThat(new String(first.bytes(), StandardCharsets.UTF_8))
+                .contains("\"name\":\"User1\"", "\"role\":\"CUSTOMER\"")
+                .doesNotContain("version");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "users.json").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void encodeAgainWhenVersionChanged() {
+        userJsonCache.user(user.getId(), 2L, mapping());
+        user.setVersion(3L);
+        UserJsonCache.Json changed = userJsonCache.user(user.getId(), 3L, mapping());
+
+        assertThat(mapped).hasValue(2);
+        assertThat(changed.version()).isEqualTo(3L);
+    }
+
+    @Test
+    void encodeAgainAfterUserChanged() {
+        userJsonCache.user(user.getId(), 2L, mapping());
+        userJsonCache.onUserChanged(new UserChangedEvent(user.getId()));
+        userJsonCache.user(user.getId(), 2L, mapping());
+
+        assertThat(mapped).hasValue(2);
+    }
+
+    @Test
+    void encodeEveryTimeWhenDisabled() {
+        properties.setEnabled(false);
+
+        userJsonCache.user(user.getId(), 2L, mapping());
+        userJsonCache.user(user.getId(), 2L, mapping());
+
+        assertThat(mapped).hasValue(2);
+    }
+
+    @Test
+    void encodeAuthUserOncePerInstance() {
+        UserAuthResponseDTO authUser = UserAuthResponseDTO.builder().id(user.getId()).email("user1@gmail.com").password("encrypted_password").roles(List.of()).build();
+        UserAuthResponseDTO reloaded = UserAuthResponseDTO.builder().id(user.getId()).email("user1@gmail.com").password("encrypted_password").roles(List.of()).build();
+
+        byte[] first = userJsonCache.authUser(authUser);
+
+        assertThat(userJsonCache.authUser(authUser)).isSameAs(first);
+        assertThat(userJsonCache.authUser(reloaded)).isNotSameAs(first).isEqualTo(first);
+    }
+
+    private Supplier<UserResponseDTO> mapping() {
+        return () -> {
+            mapped.incrementAndGet();
+            return user;
+        };
+    }
+}
@@ -2,45 +2,78 @@ package com.springcloud.demo.usersmicroservice.users.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import com.springcloud.demo.usersmicroservice.monitoring.ExceptionMetrics;
 import com.springcloud.demo.usersmicroservice.monitoring.TracingExceptions;
 import com.springcloud.demo.usersmicroservice.userroles.dto.UserRoleResponseDTO;
 import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.users.cache.UserJsonCache;
 import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UpdateUserDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserImportResultDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserPageDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.exporter.UserExportService;
+import com.springcloud.demo.usersmicroservice.users.importer.UserImportProperties;
+import com.springcloud.demo.usersmicroservice.users.importer.UserImportService;
 import com.springcloud.demo.usersmicroservice.users.service.UserService;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 @WebMvcTest(UserController.class)
+@EnableConfigurationProperties(UserImportProperties.class)
 class UserControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserImportService userImportService;
+
+    @MockBean
+    private UserExportService userExportService;
+
     @MockBean
     private TracingExceptions tracingExceptions;
 
+    @MockBean
+    private ExceptionMetrics exceptionMetrics;
+
     @Nested
     class Create {
 
@@ -48,19 +81,41 @@ class UserControllerTest {
         void createUser() throws Exception {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "Abcd1234.", null);
             UserRoleResponseDTO userRoleCreated = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            UserResponseDTO userSaved = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserResponseDTO userSaved = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(0L).build();
 
-            given(userService.create(any(CreateUserDTO.class))).willReturn(userSaved);
+            given(userService.create(any(CreateUserDTO.class))).willReturn(CompletableFuture.completedFuture(userSaved));
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                             .post("/api/users")
                             .contentType(MediaType.APPLICATION_JSON)
                             .content(new ObjectMapper().writeValueAsString(createUserDTO))
                     )
+                    .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"0\""))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.email").value(createUserDTO.getEmail()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.name").value(createUserDTO.getName()))
-                    .andExpect(MockMvcResultMatchers.jsonPath("$.password").doesNotExist());
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.password").doesNotExist())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.version").doesNotExist());
+        }
+
+        @Test
+        void errorWhenPasswordHasherSaturated() throws Exception {
+            CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "Abcd1234.", null);
+
+            given(userService.create(any(CreateUserDTO.class))).willThrow(new ServiceUnavailableException("Too many password requests in progress, try again later", Duration.ofSeconds(2)));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(createUserDTO))
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.SERVICE_UNAVAILABLE.value()))
+                    .andExpect(MockMvcResultMatchers.header().string("Retry-After", "2"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.message", Matchers.containsString("try again later")));
         }
 
         @Test
@@ -98,6 +153,123 @@ class UserControllerTest {
         }
     }
 
+    @Nested
+    class Import {
+
+        @Test
+        void streamOneResultPerLine() throws Exception {
+            UUID id = UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+
+            given(userImportService.importUsers(any(), any(MediaType.class), any())).willAnswer(invocation -> {
+                Consumer<List<UserImportResultDTO>> results = invocation.getArgument(2);
+                results.accept(List.of(UserImportResultDTO.builder().line(1).status(201).id(id).build()));
+                results.accept(List.of(UserImportResultDTO.builder().line(2).status(403).message("Already exist user with same email.").build()));
+                return CompletableFuture.completedFuture(null);
+            });
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users/import")
+                            .contentType(MediaType.APPLICATION_NDJSON)
+                            .content("{}\n{}\n")
+                    )
+                    .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+                    .andExpect(MockMvcResultMatchers.content().string(
+                            "{\"line\":1,\"status\":201,\"id\":\"" + id + "\"}\n"
+                                    + "{\"line\":2,\"status\":403,\"message\":\"Already exist user with same email.\"}\n"
+                    ));
+        }
+
+        @Test
+        void errorWhenContentTypeNotSupported() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users/import")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[]")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value()));
+
+            verify(userImportService, never()).importUsers(any(), any(), any());
+        }
+    }
+
+    @Nested
+    class Export {
+
+        @Test
+        void exportNdjsonCompressedWhenAccepted() throws Exception {
+            LocalDateTime updatedSince = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+            willAnswer(invocation -> {
+                try (OutputStream out = invocation.getArgument(2)) {
+                    out.write("{\"name\":\"User1\"}\n".getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            }).given(userExportService).export(eq(updatedSince), eq(false), any(OutputStream.class));
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/export")
+                            .param("updatedSince", "2024-05-01T10:00:00")
+                            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andReturn();
+
+            try (GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+                assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"User1\"}\n");
+            }
+        }
+
+        @Test
+        void exportNdjsonUncompressedWhenGzipRefused() throws Exception {
+            willAnswer(invocation -> {
+                try (OutputStream out = invocation.getArgument(2)) {
+                    out.write("{\"name\":\"User1\"}\n".getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            }).given(userExportService).export(isNull(), eq(false), any(OutputStream.class));
+
+            for (String acceptEncoding : List.of("gzip;q=0, identity", "x-gzip", "*;q=0", "br, GZIP ; q=0")) {
+                mockMvc.perform(MockMvcRequestBuilders
+                                .get("/api/users/export")
+                                .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                        .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                        .andExpect(MockMvcResultMatchers.content().string("{\"name\":\"User1\"}\n"));
+            }
+        }
+
+        @Test
+        void exportNdjsonCompressedWhenAnyCodingAccepted() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/export")
+                            .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, *;q=0.5")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+        }
+
+        @Test
+        void exportCsvWhenAccepted() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/export")
+                            .accept("text/csv")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                    .andExpect(MockMvcResultMatchers.content().contentType("text/csv;charset=UTF-8"));
+
+            verify(userExportService).export(isNull(), eq(true), any(OutputStream.class));
+        }
+    }
+
     @Nested
     class FindAll {
 
@@ -108,7 +280,7 @@ class UserControllerTest {
             UserRoleResponseDTO userRoleCreated2 = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
             UserResponseDTO userSaved2 = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("user2").email("user2@gmail.co").roles(List.of(userRoleCreated2)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
 
-            given(userService.findAll(any())).willReturn(List.of(userSaved1, userSaved2));
+            given(userService.findAll(any())).willReturn(new UserPageDTO(List.of(userSaved1, userSaved2), null, null));
 
             mockMvc.perform(MockMvcRequestBuilders.get("/api/users").contentType(MediaType.APPLICATION_JSON))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
@@ -126,7 +298,7 @@ class UserControllerTest {
             UserRoleResponseDTO userRoleCreated2 = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
             UserResponseDTO userSaved2 = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("user2").email("user2@gmail.co").roles(List.of(userRoleCreated2)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
 
-            given(userService.findAll(any())).willReturn(List.of(userSaved1, userSaved2));
+            given(userService.findAll(any())).willReturn(new UserPageDTO(List.of(userSaved1, userSaved2), null, null));
 
             mockMvc.perform(MockMvcRequestBuilders
                             .get("/api/users")
@@ -149,7 +321,7 @@ class UserControllerTest {
             UserRoleResponseDTO userRoleCreated2 = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
             UserResponseDTO userSaved2 = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("user2").email("user2@gmail.co").roles(List.of(userRoleCreated2)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
 
-            given(userService.findAll(any())).willReturn(List.of(userSaved1, userSaved2));
+            given(userService.findAll(any())).willReturn(new UserPageDTO(List.of(userSaved1, userSaved2), null, null));
 
             mockMvc.perform(MockMvcRequestBuilders
                             .get("/api/users")
@@ -166,6 +338,43 @@ class UserControllerTest {
             verify(userService).findAll(argThat(filters -> Objects.equals(filters.getPage(), 2) && Objects.equals(filters.getLimit(), 30) && Objects.equals(filters.getQ(), "user")));
         }
 
+        @Test
+        void findAllUsersWithCursor() throws Exception {
+            UserResponseDTO userSaved1 = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email("user1@gmail.com").roles(List.of()).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+
+            given(userService.findAll(any())).willReturn(new UserPageDTO(List.of(userSaved1), "next-cursor", null));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("limit", "1")
+                            .queryParam("cursor", "cursor")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string("X-Next-Cursor", "next-cursor"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$", Matchers.hasSize(1)));
+
+            verify(userService).findAll(argThat(filters -> Objects.equals(filters.getLimit(), 1) && Objects.equals(filters.getCursor(), "cursor")));
+        }
+
+        @Test
+        void findAllUsersWithTotal() throws Exception {
+            UserResponseDTO userSaved1 = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email("user1@gmail.com").roles(List.of()).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+
+            given(userService.findAll(any())).willReturn(new UserPageDTO(List.of(userSaved1), null, 42L));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("includeTotal", "true")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string("X-Total-Count", "42"))
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+
+            verify(userService).findAll(argThat(filters -> Boolean.TRUE.equals(filters.getIncludeTotal())));
+        }
+
         @Test
         void errorOnPaginationWrongParams() throws Exception {
 
@@ -188,18 +397,53 @@ class UserControllerTest {
         @Test
         void findById() throws Exception {
             UserRoleResponseDTO userRoleCreated = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed24")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            UserResponseDTO userSaved = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email("user1@gmail.com").roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserResponseDTO userSaved = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email("user1@gmail.com").roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(2L).build();
 
-            given(userService.findById(any())).willReturn(userSaved);
+            given(userService.findJsonById(any())).willReturn(json(userSaved));
 
             mockMvc.perform(MockMvcRequestBuilders
                             .get("/api/users/" + userSaved.getId().toString())
                             .contentType(MediaType.APPLICATION_JSON)
                     )
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id", Matchers.is(userSaved.getId().toString())));
 
-            verify(userService).findById(argThat(arg -> arg.equals(userSaved.getId().toString())));
+            verify(userService).findJsonById(argThat(arg -> arg.equals(userSaved.getId().toString())));
+            verify(userService, never()).findVersion(any());
+        }
+
+        @Test
+        void notModifiedWhenVersionNotChanged() throws Exception {
+            String id = "d0dd04ab-a40a-48a1-877e-8833e66342fa";
+
+            given(userService.findVersion(id)).willReturn(2L);
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/" + id)
+                            .header(HttpHeaders.IF_NONE_MATCH, "\"2\"")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_MODIFIED.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""))
+                    .andExpect(MockMvcResultMatchers.content().string(""));
+
+            verify(userService, never()).findJsonById(any());
+        }
+
+        @Test
+        void findByIdWhenVersionChanged() throws Exception {
+            UserResponseDTO userSaved = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email("user1@gmail.com").roles(List.of()).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(3L).build();
+
+            given(userService.findVersion(any())).willReturn(3L);
+            given(userService.findJsonById(any())).willReturn(json(userSaved));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/" + userSaved.getId())
+                            .header(HttpHeaders.IF_NONE_MATCH, "\"2\"")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.id", Matchers.is(userSaved.getId().toString())));
         }
 
         @Test
@@ -211,7 +455,36 @@ class UserControllerTest {
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.BAD_REQUEST.value()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.errors.size()", Matchers.greaterThanOrEqualTo(1)));
 
-            verify(userService, never()).findById(any());
+            verify(userService, never()).findJsonById(any());
+        }
+
+        private UserJsonCache.Json json(UserResponseDTO user) throws Exception {
+            return new UserJsonCache.Json(user.getVersion(), objectMapper.writeValueAsBytes(user));
+        }
+    }
+
+    @Nested
+    class FindByEmailToAuth {
+
+        @Test
+        void findByEmail() throws Exception {
+            UserAuthResponseDTO user = UserAuthResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).email("user1@gmail.com").password("encrypted").roles(List.of()).build();
+
+            given(userService.findJsonByEmailToAuth("user1@gmail.com")).willReturn(objectMapper.writeValueAsBytes(user));
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/email/user1@gmail.com"))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.id", Matchers.is(user.getId().toString())))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.password", Matchers.is("encrypted")));
+        }
+
+        @Test
+        void errorWhenEmailIsNotValid() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/email/not-an-email"))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.BAD_REQUEST.value()));
+
+            verify(userService, never()).findJsonByEmailToAuth(any());
         }
     }
 
@@ -222,21 +495,64 @@ class UserControllerTest {
         void updateUser() throws Exception {
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, "nuevo_mail@gmail.com", null);
             UserRoleResponseDTO userRoleCreated = UserRoleResponseDTO.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed24")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            UserResponseDTO userUpdated = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email(updateUserDTO.getEmail()).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserResponseDTO userUpdated = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("user1").email(updateUserDTO.getEmail()).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(1L).build();
 
-            given(userService.update(any(UpdateUserDTO.class), anyString())).willReturn(userUpdated);
+            given(userService.update(any(UpdateUserDTO.class), anyString(), isNull())).willReturn(CompletableFuture.completedFuture(userUpdated));
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                             .patch("/api/users/" + userUpdated.getId())
                             .contentType(MediaType.APPLICATION_JSON)
                             .content(new ObjectMapper().writeValueAsString(updateUserDTO))
                             .header("X-UserId", userUpdated.getId().toString())
                     )
+                    .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(userUpdated.getId().toString()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.email").value(updateUserDTO.getEmail()));
 
-            verify(userService).update(argThat(dto -> dto.getEmail().equals(updateUserDTO.getEmail())), argThat(pathId -> pathId.equals(userUpdated.getId().toString())));
+            verify(userService).update(argThat(dto -> dto.getEmail().equals(updateUserDTO.getEmail())), argThat(pathId -> pathId.equals(userUpdated.getId().toString())), isNull());
+        }
+
+        @Test
+        void updateUserWithIfMatch() throws Exception {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("other name", null, null);
+            UserResponseDTO userUpdated = UserResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa")).name("other name").email("user1@gmail.com").roles(List.of()).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(5L).build();
+
+            given(userService.update(any(UpdateUserDTO.class), anyString(), eq(4L))).willReturn(CompletableFuture.completedFuture(userUpdated));
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .patch("/api/users/" + userUpdated.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(updateUserDTO))
+                            .header("X-UserId", userUpdated.getId().toString())
+                            .header(HttpHeaders.IF_MATCH, "\"4\"")
+                    )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"5\""));
+        }
+
+        @Test
+        void errorWhenIfMatchIsWeak() throws Exception {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("other name", null, null);
+            String id = UUID.randomUUID().toString();
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .patch("/api/users/" + id)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(updateUserDTO))
+                            .header("X-UserId", id)
+                            .header(HttpHeaders.IF_MATCH, "W/\"4\"")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.PRECONDITION_FAILED.value()));
+
+            verify(userService, never()).update(any(), anyString(), any());
         }
 
         @Test
@@ -253,7 +569,7 @@ class UserControllerTest {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").doesNotExist())
                     .andExpect(MockMvcResultMatchers.jsonPath("$.errors.size()", Matchers.greaterThanOrEqualTo(1)));
 
-            verify(userService, never()).update(any(), anyString());
+            verify(userService, never()).update(any(), anyString(), any());
         }
 
         @Test
@@ -271,7 +587,7 @@ class UserControllerTest {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").doesNotExist())
                     .andExpect(MockMvcResultMatchers.jsonPath("$.errors.size()").value(1));
 
-            verify(userService, never()).update(any(), anyString());
+            verify(userService, never()).update(any(), anyString(), any());
         }
     }
 
@@ -0,0 +1,82 @@
+package com.springcloud.demo.usersmicroservice.users.exporter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserExportServiceTest {
+
+    @Mock
+    UserRepository userRepository;
+
+    UserExportProperties properties;
+    UserExportService userExportService;
+
+    LocalDateTime createdAt = LocalDateTime.of(2024, 5, 1, 10, 0);
+    UUID userId1 = UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fa");
+    UUID userId2 = UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+    UUID roleId1 = UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed24");
+    UUID roleId2 = UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25");
+
+    @BeforeEach
+    void setup() {
+        properties = new UserExportProperties();
+        properties.setFetchSize(50);
+        userExportService = new UserExportService(userRepository, new ObjectMapper(), properties);
+
+        List<UserWithRoleView> rows = List.of(
+                new UserWithRoleView(userId1, "User1", "user1@gmail.com", null, createdAt, createdAt, 1L, roleId1, "CUSTOMER", createdAt),
+                new UserWithRoleView(userId1, "User1", "user1@gmail.com", null, createdAt, createdAt, 1L, roleId2, "OWNER", createdAt),
+                new UserWithRoleView(userId2, "User, 2", "user2@gmail.com", null, createdAt, createdAt, 0L, null, null, null)
+        );
+        willAnswer(invocation -> {
+            Consumer<UserWithRoleView> action = invocation.getArgument(2);
+            rows.forEach(action);
+            return null;
+        }).given(userRepository).forEachWithRoles(any(), eq(50), any());
+    }
+
+    @Test
+    void exportOneUserPerLineAsNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        userExportService.export(null, false, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"id\":\"" + userId1 + "\",\"name\":\"User1\",\"email\":\"user1@gmail.com\",\"createdAt\":\"2024-05-01T10:00:00\",\"lastUpdated\":\"2024-05-01T10:00:00\","
+                        + "\"roles\":[{\"id\":\"" + roleId1 + "\",\"role\":\"CUSTOMER\",\"createdAt\":\"2024-05-01T10:00:00\"},{\"id\":\"" + roleId2 + "\",\"role\":\"OWNER\",\"createdAt\":\"2024-05-01T10:00:00\"}]}\n"
+                        + "{\"id\":\"" + userId2 + "\",\"name\":\"User, 2\",\"email\":\"user2@gmail.com\",\"createdAt\":\"2024-05-01T10:00:00\",\"lastUpdated\":\"2024-05-01T10:00:00\",\"roles\":[]}\n"
+        );
+    }
+
+    @Test
+    void exportCsvWithHeaderAndRoleNames() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LocalDateTime updatedSince = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        userExportService.export(updatedSince, true, out);
+
+        then(userRepository).should().forEachWithRoles(eq(updatedSince), eq(50), any());
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).containsExactly(
+                "id,name,email,createdAt,lastUpdated,roles",
+                userId1 + ",User1,user1@gmail.com,2024-05-01T10:00:00,2024-05-01T10:00:00,CUSTOMER;OWNER",
+                userId2 + ",\"User, 2\",user2@gmail.com,2024-05-01T10:00:00,2024-05-01T10:00:00,"
+        );
+    }
+}
@@ -0,0 +1,221 @@
+package com.springcloud.demo.usersmicroservice.users.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import com.springcloud.demo.usersmicroservice.password.PasswordHasher;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.users.dto.UserImportResultDTO;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserImportServiceTest {
+
+    @Mock
+    UserRepository userRepository;
+
+    @Mock
+    PasswordHasher passwordHasher;
+
+    UserImportProperties properties;
+    UserImportService userImportService;
+    List<List<UserImportResultDTO>> batches;
+
+    @BeforeEach
+    void setup() {
+        properties = new UserImportProperties();
+        batches = new ArrayList<>();
+        userImportService = userImportService();
+    }
+
+    @AfterEach
+    void shutdown() {
+        userImportService.destroy();
+    }
+
+    @Test
+    void importValidLinesAndReportInvalidOnes() {
+        String body = """
+                {"name":"Gonza","email":"gonzalo@gmail.com","password":"Abcd1234.","role":"OWNER"}
+                {"name":"Gonza"
+
+                {"name":"","email":"not-an-email","password":"Abcd1234."}
+                {"name":"Gonza","email":"other@gmail.com","password":"Abcd1234.","role":"KING"}
+                {"name":"Gonza","email":"GONZALO@gmail.com","password":"Abcd1234."}
+                """;
+
+        given(passwordHasher.encodeAll(anyList())).willAnswer(invocation -> hashes(invocation.getArgument(0)));
+        given(userRepository.insertAllWithRole(anyList())).willAnswer(invocation -> Set.of(invocation.<List<User>>getArgument(0).getFirst().getId()));
+
+        userImportService.importUsers(new StringReader(body), MediaType.APPLICATION_NDJSON, batches::add).join();
+
+        ArgumentCaptor<List<User>> users = ArgumentCaptor.captor();
+        then(userRepository).should().insertAllWithRole(users.capture());
+        assertThat(users.getValue()).extracting(User::getEmail).containsExactly("gonzalo@gmail.com", "GONZALO@gmail.com");
+        assertThat(users.getValue()).extracting(User::getPassword).containsExactly("hash-Abcd1234.", "hash-Abcd1234.");
+        assertThat(users.getValue()).extracting(user -> user.getRoles().getFirst().getRole()).containsExactly(Roles.OWNER.name(), Roles.CUSTOMER.name());
+        assertThat(users.getValue()).allSatisfy(user -> assertThat(user.getRoles().getFirst().getId()).isNotNull());
+
+        assertThat(batches).hasSize(1);
+        List<UserImportResultDTO> results = batches.getFirst();
+        assertThat(results).extracting(UserImportResultDTO::getLine).containsExactly(1L, 2L, 4L, 5L, 6L);
+        assertThat(results).extracting(UserImportResultDTO::getStatus).containsExactly(201, 400, 400, 400, 403);
+        assertThat(results.get(0).getId()).isEqualTo(users.getValue().getFirst().getId());
+        assertThat(results.get(2).getErrors()).containsExactly("email must be a well-formed email address", "name must not be blank");
+        assertThat(results.get(3).getMessage()).startsWith("Role not valid.");
+        assertThat(results.get(4).getMessage()).isEqualTo("Already exist user with same email.");
+    }
+
+    @Test
+    void importInBatches() {
+        properties.setBatchSize(2);
+        String body = """
+                {"name":"Gonza","email":"gonzalo1@gmail.com","password":"Abcd1234."}
+                {"name":"Gonza","email":"gonzalo2@gmail.com","password":"Abcd1234."}
+                {"name":"Gonza","email":"gonzalo3@gmail.com","password":"Abcd1234."}
+                """;
+
+        given(passwordHasher.encodeAll(anyList())).willAnswer(invocation -> hashes(invocation.getArgument(0)));
+        given(userRepository.insertAllWithRole(anyList())).willAnswer(invocation -> ids(invocation.getArgument(0)));
+
+        userImportService.importUsers(new StringReader(body), MediaType.APPLICATION_NDJSON, batches::add).join();
+
+        then(userRepository).should(times(2)).insertAllWithRole(anyList());
+        assertThat(batches).extracting(List::size).containsExactly(2, 1);
+        assertThat(batches.get(1).getFirst().getLine()).isEqualTo(3);
+    }
+
+    @Test
+    void importCsvWithHeader() {
+        String body = """
+                email,name,password,role
+                gonzalo@gmail.com,"Gonza, Jr",Abcd1234.,
+                other@gmail.com,Other,Abcd1234.,OWNER
+                """;
+
+        given(passwordHasher.encodeAll(anyList())).willAnswer(invocation -> hashes(invocation.getArgument(0)));
+        given(userRepository.insertAllWithRole(anyList())).willAnswer(invocation -> ids(invocation.getArgument(0)));
+
+        userImportService.importUsers(new StringReader(body), MediaType.parseMediaType("text/csv;charset=UTF-8"), batches::add).join();
+
+        ArgumentCaptor<List<User>> users = ArgumentCaptor.captor();
+        then(userRepository).should().insertAllWithRole(users.capture());
+        assertThat(users.getValue()).extracting(User::getName).containsExactly("Gonza, Jr", "Other");
+        assertThat(users.getValue()).extracting(user -> user.getRoles().getFirst().getRole()).containsExactly(Roles.CUSTOMER.name(), Roles.OWNER.name());
+        assertThat(batches.getFirst()).extracting(UserImportResultDTO::getLine).containsExactly(2L, 3L);
+        assertThat(batches.getFirst()).extracting(UserImportResultDTO::getStatus).containsExactly(201, 201);
+    }
+
+    @Test
+    void stopWhenCsvHeaderHasUnknownColumns() {
+        String body = """
+                email,name,password,age
+                gonzalo@gmail.com,Gonza,Abcd1234.,30
+                """;
+
+        userImportService.importUsers(new StringReader(body), MediaType.parseMediaType("text/csv"), batches::add).join();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.getFirst().getFirst().getStatus()).isEqualTo(400);
+        assertThat(batches.getFirst().getFirst().getMessage()).startsWith("Columns not valid [age]");
+        then(userRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void rejectLinesOverTheMaxLength() {
+        properties.setMaxLineLength(100);
+        String body = "{\"name\":\"Gonza\",\"email\":\"gonzalo@gmail.com\",\"password\":\"Abcd1234.\"}\r\n" +
+                "{\"name\":\"" + "a".repeat(10_000) + "\",\"email\":\"other@gmail.com\",\"password\":\"Abcd1234.\"}\r\n" +
+                "{\"name\":\"Gonza\",\"email\":\"last@gmail.com\",\"password\":\"Abcd1234.\"}";
+
+        given(passwordHasher.encodeAll(anyList())).willAnswer(invocation -> hashes(invocation.getArgument(0)));
+        given(userRepository.insertAllWithRole(anyList())).willAnswer(invocation -> ids(invocation.getArgument(0)));
+
+        userImportService.importUsers(new StringReader(body), MediaType.APPLICATION_NDJSON, batches::add).join();
+
+        ArgumentCaptor<List<User>> users = ArgumentCaptor.captor();
+        then(userRepository).should().insertAllWithRole(users.capture());
+        assertThat(users.getValue()).extracting(User::getEmail).containsExactly("gonzalo@gmail.com", "last@gmail.com");
+        assertThat(batches.getFirst()).extracting(UserImportResultDTO::getLine).containsExactly(1L, 2L, 3L);
+        assertThat(batches.getFirst()).extracting(UserImportResultDTO::getStatus).containsExactly(201, 413, 201);
+        assertThat(batches.getFirst().get(1).getMessage()).isEqualTo("Line too long, max 100 characters");
+    }
+
+    @Test
+    void stopWhenCsvHeaderIsOverTheMaxLength() {
+        properties.setMaxLineLength(100);
+        String body = "email,name," + "x".repeat(200) + "\ngonzalo@gmail.com,Gonza,Abcd1234.\n";
+
+        userImportService.importUsers(new StringReader(body), MediaType.parseMediaType("text/csv"), batches::add).join();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.getFirst()).singleElement().satisfies(result -> {
+            assertThat(result.getLine()).isOne();
+            assertThat(result.getStatus()).isEqualTo(413);
+        });
+        then(userRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void rejectImportsOverTheMaxConcurrent() throws IOException {
+        userImportService.destroy();
+        properties.setMaxConcurrent(1);
+        userImportService = userImportService();
+
+        PipedWriter running = new PipedWriter();
+        CompletableFuture<Void> first = userImportService.importUsers(new PipedReader(running), MediaType.APPLICATION_NDJSON, batches::add);
+
+        assertThatThrownBy(() -> userImportService.importUsers(new StringReader(""), MediaType.APPLICATION_NDJSON, batches::add))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .hasMessageContaining("Too many imports");
+
+        running.close();
+        first.join();
+        userImportService.importUsers(new StringReader(""), MediaType.APPLICATION_NDJSON, batches::add).join();
+    }
+
+    private UserImportService userImportService() {
+        return new UserImportService(
+                userRepository,
+                passwordHasher,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ServiceMetrics(new SimpleMeterRegistry()),
+                properties,
+                new ObjectMapper(),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    private static List<String> hashes(List<String> passwords) {
+        return passwords.stream().map(password -> "hash-" + password).toList();
+    }
+
+    private static Set<UUID> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toSet());
+    }
+}
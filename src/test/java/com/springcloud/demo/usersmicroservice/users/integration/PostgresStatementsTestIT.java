@@ -0,0 +1,209 @@
+package com.springcloud.demo.usersmicroservice.users.integration;
+
+import com.springcloud.demo.usersmicroservice.datasource.DatabasePlatform;
+import com.springcloud.demo.usersmicroservice.support.PostgresTestDatabase;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleInsertView;
+import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * The single statement inserts relying on the unique indexes of the migrations, only run on PostgreSQL.
+ * The other integration tests run on H2 and take the check then insert fallback
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class PostgresStatementsTestIT {
+
+    private static final int CONCURRENT = 8;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.register(registry);
+    }
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserRoleRepository userRoleRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DatabasePlatform databasePlatform;
+
+    @BeforeEach
+    void setup() {
+        assertThat(databasePlatform.isPostgres()).isTrue();
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Nested
+    class InsertWithRole {
+
+        @Test
+        void insertUserAndRoleOnce() {
+            List<UserWithRoleView> created = userRepository.insertWithRole(user("gonzalo@gmail.com"), Roles.CUSTOMER.name());
+            List<UserWithRoleView> duplicate = userRepository.insertWithRole(user("Gonzalo@Gmail.com"), Roles.OWNER.name());
+
+            assertThat(created).singleElement().satisfies(row -> {
+                assertThat(row.email()).isEqualTo("gonzalo@gmail.com");
+                assertThat(row.role()).isEqualTo(Roles.CUSTOMER.name());
+                assertThat(row.version()).isZero();
+            });
+            assertThat(duplicate).isEmpty();
+            assertThat(count("users")).isOne();
+            assertThat(count("user_roles")).isOne();
+        }
+
+        @Test
+        void insertOneOfConcurrentUsersWithSameEmail() throws Exception {
+            List<List<UserWithRoleView>> results = concurrently(i ->
+                    () -> userRepository.insertWithRole(user(i % 2 == 0 ? "same@gmail.com" : "SAME@gmail.com"), Roles.CUSTOMER.name()));
+
+            assertThat(results).filteredOn(rows -> !rows.isEmpty()).hasSize(1);
+            assertThat(count("users")).isOne();
+            assertThat(count("user_roles")).isOne();
+        }
+    }
+
+    @Nested
+    class InsertAllWithRole {
+
+        @Test
+        void skipExistingEmailsAndRepeatedOnesInTheBatch() {
+            userRepository.insertWithRole(user("existing@gmail.com"), Roles.CUSTOMER.name());
+            User first = userWithRole("new@gmail.com");
+            User repeated = userWithRole("NEW@gmail.com");
+            User existing = userWithRole("Existing@gmail.com");
+
+            Set<UUID> inserted = userRepository.insertAllWithRole(List.of(first, repeated, existing));
+
+            assertThat(inserted).containsExactly(first.getId());
+            assertThat(count("users")).isEqualTo(2);
+            assertThat(jdbcTemplate.queryForList("SELECT user_id FROM user_roles", UUID.class)).contains(first.getId()).hasSize(2);
+        }
+
+        @Test
+        void insertEachEmailOnceFromConcurrentBatches() throws Exception {
+            List<Set<UUID>> results = concurrently(i ->
+                    () -> userRepository.insertAllWithRole(List.of(userWithRole("a@gmail.com"), userWithRole("b@gmail.com"), userWithRole("batch" + i + "@gmail.com"))));
+
+            assertThat(results.stream().mapToInt(Set::size).sum()).isEqualTo(2 + CONCURRENT);
+            assertThat(count("users")).isEqualTo(2 + CONCURRENT);
+            assertThat(count("user_roles")).isEqualTo(2 + CONCURRENT);
+        }
+    }
+
+    @Nested
+    class InsertRoleIfAbsent {
+
+        UUID userId;
+
+        @BeforeEach
+        void setup() {
+            userId = userRepository.insertWithRole(user("gonzalo@gmail.com"), Roles.CUSTOMER.name()).getFirst().id();
+        }
+
+        @Test
+        void insertRoleOnceAndIncrementVersion() {
+            UserRoleInsertView created = userRoleRepository.insertIfAbsent(userId, Roles.OWNER.name());
+            UserRoleInsertView duplicate = userRoleRepository.insertIfAbsent(userId, Roles.OWNER.name());
+
+            assertThat(created.userExists()).isTrue();
+            assertThat(created.created().role()).isEqualTo(Roles.OWNER.name());
+            assertThat(duplicate.userExists()).isTrue();
+            assertThat(duplicate.created()).isNull();
+            assertThat(version(userId)).isOne();
+            assertThat(count("user_roles")).isEqualTo(2);
+        }
+
+        @Test
+        void tellUserNotExist() {
+            UserRoleInsertView result = userRoleRepository.insertIfAbsent(UUID.randomUUID(), Roles.OWNER.name());
+
+            assertThat(result.userExists()).isFalse();
+            assertThat(result.created()).isNull();
+        }
+
+        @Test
+        void insertOneOfConcurrentSameRoles() throws Exception {
+            List<UserRoleInsertView> results = concurrently(i -> () -> userRoleRepository.insertIfAbsent(userId, Roles.OWNER.name()));
+
+            assertThat(results).allMatch(UserRoleInsertView::userExists);
+            assertThat(results).filteredOn(result -> result.created() != null).hasSize(1);
+            assertThat(version(userId)).isOne();
+            assertThat(count("user_roles")).isEqualTo(2);
+        }
+    }
+
+    /**
+     * Runs the calls at the same time, each on its own connection
+     */
+    private <T> List<T> concurrently(IntFunction<Callable<T>> call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(CONCURRENT)) {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT; i++) {
+                Callable<T> callable = call.apply(i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return callable.call();
+                }));
+            }
+            start.countDown();
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        }
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+    }
+
+    private long version(UUID userId) {
+        return jdbcTemplate.queryForObject("SELECT version FROM users WHERE id = ?", Long.class, userId);
+    }
+
+    private static User user(String email) {
+        return User.builder().name("Gonza").email(email).password("encrypted_password").build();
+    }
+
+    private static User userWithRole(String email) {
+        User user = User.builder().id(UUID.randomUUID()).name("Gonza").email(email).password("encrypted_password").build();
+        user.setRoles(List.of(UserRole.builder().id(UUID.randomUUID()).role(Roles.CUSTOMER.name()).user(user).build()));
+        return user;
+    }
+}
@@ -0,0 +1,117 @@
+package com.springcloud.demo.usersmicroservice.users.integration;
+
+import com.springcloud.demo.usersmicroservice.support.PostgresTestDatabase;
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Loads of the second level cache racing the writes run as plain SQL. On PostgreSQL, a repeatable read transaction
+ * keeps reading the user as it was before a change committed meanwhile
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class UserEntityCacheTestIT {
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.register(registry);
+    }
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserRoleRepository userRoleRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    UUID userId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.update("DELETE FROM users");
+        entityManagerFactory.getCache().evictAll();
+
+        User user = User.builder().name("Gonza").email("gonzalo@gmail.com").password("encrypted_password").build();
+        userId = userRepository.insertWithRole(user, Roles.CUSTOMER.name()).getFirst().id();
+    }
+
+    @Test
+    void notCacheUserLoadedBeforeRoleChange() throws Exception {
+        CountDownLatch snapshotTaken = new CountDownLatch(1);
+        CountDownLatch roleAdded = new CountDownLatch(1);
+
+        TransactionTemplate snapshot = new TransactionTemplate(transactionManager);
+        snapshot.setReadOnly(true);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            Future<User> loaded = executor.submit(() -> snapshot.execute(status -> {
+                jdbcTemplate.queryForObject("SELECT version FROM users WHERE id = ?", Long.class, userId);
+                snapshotTaken.countDown();
+                await(roleAdded);
+
+                User user = entityManager.find(User.class, userId);
+                Hibernate.initialize(user.getRoles());
+                return user;
+            }));
+
+            await(snapshotTaken);
+            assertThat(userRoleRepository.insertIfAbsent(userId, Roles.OWNER.name()).created()).isNotNull();
+            roleAdded.countDown();
+
+            User stale = loaded.get(30, TimeUnit.SECONDS);
+            assertThat(stale.getVersion()).isZero();
+            assertThat(stale.getRoles()).hasSize(1);
+        }
+
+        User cached = userRepository.findCachedById(userId).orElseThrow();
+
+        assertThat(cached.getVersion()).isOne();
+        assertThat(cached.getRoles()).hasSize(2);
+        assertThat(userRepository.findCachedById(userId).orElseThrow().getRoles()).hasSize(2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
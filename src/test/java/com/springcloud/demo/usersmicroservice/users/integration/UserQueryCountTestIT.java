@@ -0,0 +1,247 @@
+package com.springcloud.demo.usersmicroservice.users.integration;
+
+import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
+import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Check the number of SQL statements executed by the endpoints
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+public class UserQueryCountTestIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    private List<User> users;
+
+    @BeforeEach
+    void setup() {
+        userRepository.deleteAll();
+
+        users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            UserRole customerRole = new UserRole(null, Roles.CUSTOMER.name(), null, null);
+            UserRole ownerRole = new UserRole(null, Roles.OWNER.name(), null, null);
+            User user = new User(null, "User" + i, "query_count_user" + i + "@gmail.com", "encrypted_password", null, null, null, List.of(customerRole, ownerRole));
+            customerRole.setUser(user);
+            ownerRole.setUser(user);
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void findAllLoadRolesInBatch() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .queryParam("limit", "5")
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(5))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[4].roles.size()").value(2));
+
+        // page + roles of whole page, without count
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void findAllWithTermToSearchLoadRolesInBatch() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .queryParam("q", "User")
+                .queryParam("limit", "5")
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(5))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[4].roles.size()").value(2));
+
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void findByIdLoadUserAndRolesInOneQuery() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users/" + users.getFirst().getId())
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(2));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findByEmailLoadUserAndRolesInOneQuery() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users/email/" + users.getFirst().getEmail())
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(2));
+
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void findByIdServedFromSecondLevelCache() throws Exception {
+        User user = users.getFirst();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+        statistics.clear();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(2));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users/" + user.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_MODIFIED.value()));
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isPositive();
+    }
+
+    @Test
+    void conditionalGetNotCachedReadsOnlyTheVersion() throws Exception {
+        User user = users.getFirst();
+        entityManagerFactory.getCache().evictAll();
+        statistics.clear();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/users/" + user.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_MODIFIED.value()));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+
+    @Test
+    void updateUserLoadedFromSecondLevelCache() throws Exception {
+        User user = users.getFirst();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+        statistics.clear();
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                .patch("/api/users/" + user.getId())
+                .header("X-UserId", user.getId().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Other name\"}")
+        )
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        // only the update
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Other name"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""));
+    }
+
+    @Test
+    void addAndDeleteRoleDropCachedUser() throws Exception {
+        User user = users.getFirst();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id = ? AND role = ?", user.getId(), Roles.OWNER.name());
+        mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/users/" + user.getId() + "/roles")
+                .header("X-UserId", user.getId().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"role\":\"OWNER\"}")
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(2))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""));
+
+        UUID customerRole = user.getRoles().getFirst().getId();
+        mockMvc.perform(MockMvcRequestBuilders
+                .delete("/api/users/roles/" + customerRole)
+                .header("X-UserId", user.getId().toString())
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].role").value(Roles.OWNER.name()))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""));
+    }
+
+    @Test
+    void deleteUserAndRolesInOneStatement() throws Exception {
+        User user = users.getFirst();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+        statistics.clear();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                .delete("/api/users/" + user.getId())
+                .header("X-UserId", user.getId().toString())
+        )
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+        // one plain SQL statement, nothing is loaded through Hibernate and the roles are removed by the foreign key cascade
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM user_roles WHERE user_id = ?", Long.class, user.getId())).isZero();
+        assertThat(entityManagerFactory.getCache().contains(User.class, user.getId())).isFalse();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user.getId()))
+                .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_FOUND.value()));
+    }
+}
@@ -1,11 +1,13 @@
 package com.springcloud.demo.usersmicroservice.users.integration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springcloud.demo.usersmicroservice.userroles.dto.AddRoleDTO;
 import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
 import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
 import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UpdateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
 import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
 
 import static org.assertj.core.api.Assertions.*;
@@ -17,13 +19,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,6 +45,9 @@ public class UserTestIT {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     public void setup() {
         userRepository.deleteAll();
@@ -50,11 +60,14 @@ public class UserTestIT {
         void createUser() throws Exception {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "Abcd1234.", null);
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                             .post("/api/users")
                             .contentType(MediaType.APPLICATION_JSON)
                             .content(new ObjectMapper().writeValueAsString(createUserDTO))
                     )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").isString())
                     .andExpect(MockMvcResultMatchers.jsonPath("$.password").doesNotExist())
@@ -64,19 +77,23 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].role").value(Roles.CUSTOMER.name()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].id").isString());
 
-            User userSaved = userRepository.findByEmail(createUserDTO.getEmail()).orElseThrow(() -> new AssertionError("user not found in database"));
-            assertThat(userSaved.getPassword()).isNotEqualTo(createUserDTO.getPassword());
+            List<UserWithRoleView> userSaved = userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail());
+            assertThat(userSaved).as("user in database").hasSize(1);
+            assertThat(userSaved.getFirst().password()).isNotEqualTo(createUserDTO.getPassword());
         }
 
         @Test
         void createUserWithCustomRole() throws Exception {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "Abcd1234.", "OWNER");
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                             .post("/api/users")
                             .contentType(MediaType.APPLICATION_JSON)
                             .content(new ObjectMapper().writeValueAsString(createUserDTO))
                     )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").isString())
                     .andExpect(MockMvcResultMatchers.jsonPath("$.password").doesNotExist())
@@ -86,8 +103,35 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].role").value(Roles.OWNER.name()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].id").isString());
 
-            User userSaved = userRepository.findByEmail(createUserDTO.getEmail()).orElseThrow(() -> new AssertionError("user not found in database"));
-            assertThat(userSaved.getPassword()).isNotEqualTo(createUserDTO.getPassword());
+            List<UserWithRoleView> userSaved = userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail());
+            assertThat(userSaved).as("user in database").hasSize(1);
+            assertThat(userSaved.getFirst().password()).isNotEqualTo(createUserDTO.getPassword());
+        }
+
+        @Test
+        void errorOnCreateUserWithEmailOfOtherUserIgnoringCase() throws Exception {
+            CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "Abcd1234.", null);
+            CreateUserDTO sameEmailDTO = new CreateUserDTO("Other", "Gonzalo@Gmail.com", "Abcd1234.", null);
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(createUserDTO))
+                    ).andReturn()))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()));
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(sameEmailDTO))
+                    )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.FORBIDDEN.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Already exist user with same email."));
+
+            assertThat(userRepository.count()).isEqualTo(1);
         }
 
         @Test
@@ -103,8 +147,94 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").doesNotExist())
                     .andExpect(MockMvcResultMatchers.jsonPath("$.message", Matchers.containsString("Role not valid")));
 
-            Optional<User> userSaved = userRepository.findByEmail(createUserDTO.getEmail());
-            assertThat(userSaved).isEmpty();
+            assertThat(userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail())).isEmpty();
+        }
+    }
+
+    @Nested
+    class ImportUsers {
+
+        @Test
+        void importUsersFromNdjson() throws Exception {
+            userRepository.save(User.builder().name("Gonza").email("gonzalo@gmail.com").password("Abcd1234.").build());
+
+            String body = """
+                    {"name":"Ana","email":"ana@gmail.com","password":"Abcd1234.","role":"OWNER"}
+                    {"name":"Gonza","email":"GONZALO@gmail.com","password":"Abcd1234."}
+                    {"name":"Ana","email":"Ana@gmail.com","password":"Abcd1234."}
+                    {"name":"Bob","email":"bob","password":"Abcd1234."}
+                    """;
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users/import")
+                            .contentType(MediaType.APPLICATION_NDJSON)
+                            .content(body)
+                    )
+                    .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                    .andReturn();
+
+            String content = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andReturn().getResponse().getContentAsString();
+
+            ObjectMapper objectMapper = new ObjectMapper();
+            List<Integer> statuses = content.lines().map(line -> {
+                try {
+                    return objectMapper.readTree(line).get("status").asInt();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }).toList();
+            assertThat(statuses).containsExactly(201, 403, 403, 400);
+
+            List<UserWithRoleView> imported = userRepository.findViewByEmailIgnoreCase("ana@gmail.com");
+            assertThat(imported).hasSize(1);
+            assertThat(imported.getFirst().role()).isEqualTo(Roles.OWNER.name());
+            assertThat(imported.getFirst().password()).isNotEqualTo("Abcd1234.");
+            assertThat(content.lines().findFirst().orElseThrow()).contains(imported.getFirst().id().toString());
+            assertThat(userRepository.count()).isEqualTo(2);
+        }
+    }
+
+    @Nested
+    class ExportUsers {
+
+        @Test
+        void exportUsersChangedSinceWithTheirRoles() throws Exception {
+            User user1 = User.builder().name("User1").email("user1@gmail.com").password("Abcd1234.").roles(new ArrayList<>()).build();
+            user1.getRoles().add(UserRole.builder().role(Roles.CUSTOMER.name()).user(user1).build());
+            User user2 = User.builder().name("User2").email("user2@gmail.com").password("Abcd1234.").roles(new ArrayList<>()).build();
+            user2.getRoles().add(UserRole.builder().role(Roles.CUSTOMER.name()).user(user2).build());
+            userRepository.saveAll(List.of(user1, user2));
+            jdbcTemplate.update("UPDATE users SET last_updated = ?", LocalDateTime.now().minusDays(1));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users/" + user1.getId() + "/roles")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header("X-UserId", user1.getId().toString())
+                            .content(new ObjectMapper().writeValueAsString(new AddRoleDTO(Roles.OWNER.name())))
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()));
+
+            String all = mockMvc.perform(MockMvcRequestBuilders.get("/api/users/export"))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andReturn().getResponse().getContentAsString();
+
+            assertThat(all.lines()).hasSize(2);
+            assertThat(all).doesNotContain("password");
+
+            String changed = mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/users/export")
+                            .param("updatedSince", LocalDateTime.now().minusHours(1).toString())
+                            .accept("text/csv")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andReturn().getResponse().getContentAsString();
+
+            assertThat(changed.lines()).hasSize(2);
+            assertThat(changed.lines().skip(1).findFirst().orElseThrow())
+                    .startsWith(user1.getId() + ",User1,user1@gmail.com,")
+                    .endsWith(",CUSTOMER;OWNER");
         }
     }
 
@@ -117,10 +247,10 @@ public class UserTestIT {
         @BeforeEach
         void setup(){
             UserRole userRole1 = new UserRole(null, Roles.CUSTOMER.name(), null, null);
-            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, List.of(userRole1));
+            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, null, List.of(userRole1));
             userRole1.setUser(user1);
             UserRole userRole2 = new UserRole(null, Roles.OWNER.name(), null, null);
-            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, List.of(userRole2));
+            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, null, List.of(userRole2));
             userRole2.setUser(user2);
 
             userRepository.saveAll(List.of(user1,user2));
@@ -148,6 +278,43 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user1.getEmail()));
         }
 
+        @Test
+        void findAllUsersWithCursor() throws Exception {
+            String nextCursor = mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("limit","1")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user1.getEmail()))
+                    .andReturn()
+                    .getResponse()
+                    .getHeader("X-Next-Cursor");
+
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("limit","1")
+                            .queryParam("cursor", nextCursor)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user2.getEmail()))
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+        }
+
+        @Test
+        void errorWhenCursorNotValid() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("cursor","not-valid")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.BAD_REQUEST.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Cursor not valid"));
+        }
+
         @Test
         void findAllUsersWithTermToSearch() throws Exception {
             mockMvc.perform(MockMvcRequestBuilders
@@ -159,6 +326,90 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1))
                     .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user2.getEmail()));
         }
+        @Test
+        void findAllUsersWithTermToSearchInEmail() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("q","user2@gmail")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user2.getEmail()));
+        }
+
+        @Test
+        void findAllUsersWithTotal() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("limit","1")
+                            .queryParam("includeTotal","true")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string("X-Total-Count", "2"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1));
+        }
+
+        @Test
+        void findAllUsersWithTermToSearchAndTotal() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("q","user2")
+                            .queryParam("includeTotal","true")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string("X-Total-Count", "1"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1));
+        }
+
+        @Test
+        void findAllUsersWithoutTotal() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Total-Count"));
+        }
+
+        @Test
+        void findAllUsersWithTermToSearchAndCursor() throws Exception {
+            String nextCursor = mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("q","@gmail.com")
+                            .queryParam("limit","1")
+            )
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user1.getEmail()))
+                    .andReturn()
+                    .getResponse()
+                    .getHeader("X-Next-Cursor");
+
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("q","@gmail.com")
+                            .queryParam("limit","1")
+                            .queryParam("cursor", nextCursor)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value(user2.getEmail()))
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+        }
+
+        @Test
+        void findAllUsersWithTermToSearchWithWildcards() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                            .queryParam("q","%")
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.size()").value(0));
+        }
     }
 
     @Nested
@@ -170,10 +421,10 @@ public class UserTestIT {
         @BeforeEach
         void setup(){
             UserRole userRole1 = new UserRole(null, Roles.CUSTOMER.name(), null, null);
-            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, List.of(userRole1));
+            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, null, List.of(userRole1));
             userRole1.setUser(user1);
             UserRole userRole2 = new UserRole(null, Roles.OWNER.name(), null, null);
-            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, List.of(userRole2));
+            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, null, List.of(userRole2));
             userRole2.setUser(user2);
 
             userRepository.saveAll(List.of(user1,user2));
@@ -191,6 +442,28 @@ public class UserTestIT {
                     .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(1));
         }
 
+        @Test
+        void findByIdAfterAddRole() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user1.getId()))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"0\""))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(1));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/users/" + user1.getId() + "/roles")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header("X-UserId", user1.getId().toString())
+                            .content(new ObjectMapper().writeValueAsString(new AddRoleDTO(Roles.OWNER.name())))
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.CREATED.value()));
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user1.getId()))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(2));
+        }
+
         @Test
         void errorWhenNotExistUserById() throws Exception {
             mockMvc.perform(MockMvcRequestBuilders
@@ -202,6 +475,56 @@ public class UserTestIT {
         }
     }
 
+    @Nested
+    class FindByEmailToAuth {
+
+        User user1;
+
+        @BeforeEach
+        void setup(){
+            UserRole userRole1 = new UserRole(null, Roles.CUSTOMER.name(), null, null);
+            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, null, List.of(userRole1));
+            userRole1.setUser(user1);
+
+            userRepository.save(user1);
+        }
+
+        @Test
+        void findByEmailAfterUpdateEmail() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users/email/" + user1.getEmail())
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(user1.getId().toString()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.roles.size()").value(1));
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                    .patch("/api/users/" + user1.getId())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(new ObjectMapper().writeValueAsString(new UpdateUserDTO(null, "other_email@gmail.com", null)))
+                    .header("X-UserId", user1.getId().toString())
+            )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users/email/" + user1.getEmail())
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_FOUND.value()));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/users/email/other_email@gmail.com")
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(user1.getId().toString()));
+        }
+    }
+
     @Nested
     class UpdateUser {
 
@@ -211,10 +534,10 @@ public class UserTestIT {
         @BeforeEach
         void setup(){
             UserRole userRole1 = new UserRole(null, Roles.CUSTOMER.name(), null, null);
-            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, List.of(userRole1));
+            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, null, List.of(userRole1));
             userRole1.setUser(user1);
             UserRole userRole2 = new UserRole(null, Roles.OWNER.name(), null, null);
-            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, List.of(userRole2));
+            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, null, List.of(userRole2));
             userRole2.setUser(user2);
 
             userRepository.saveAll(List.of(user1,user2));
@@ -224,12 +547,15 @@ public class UserTestIT {
         void updateUserEmail() throws Exception {
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, "nuevo_Email@gmail.com", null);
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                     .patch("/api/users/" + user1.getId())
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(new ObjectMapper().writeValueAsString(updateUserDTO))
                     .header("X-UserId", user1.getId().toString())
             )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(user1.getId().toString()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.email").value(updateUserDTO.getEmail()));
@@ -238,16 +564,56 @@ public class UserTestIT {
             assertThat(userUpdated.orElseThrow().getEmail()).isEqualToIgnoringCase(updateUserDTO.getEmail());
         }
 
+        @Test
+        void conditionalRequestsWithETag() throws Exception {
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user1.getId()))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"0\""));
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user1.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.NOT_MODIFIED.value()));
+
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                            .patch("/api/users/" + user1.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(new UpdateUserDTO("Other name", null, null)))
+                            .header("X-UserId", user1.getId().toString())
+                            .header(HttpHeaders.IF_MATCH, "\"0\"")
+                    )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .patch("/api/users/" + user1.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(new UpdateUserDTO("Lost update", null, null)))
+                            .header("X-UserId", user1.getId().toString())
+                            .header(HttpHeaders.IF_MATCH, "\"0\"")
+                    )
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.PRECONDITION_FAILED.value()));
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + user1.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                    .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Other name"));
+        }
+
         @Test
         void updateUserPassword() throws Exception {
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, null, "Abcde12345!");
 
-            mockMvc.perform(MockMvcRequestBuilders
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                     .patch("/api/users/" + user2.getId())
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(new ObjectMapper().writeValueAsString(updateUserDTO))
                     .header("X-UserId", user2.getId().toString())
             )
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
                     .andExpect(MockMvcResultMatchers.status().is(HttpStatus.OK.value()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(user2.getId().toString()))
                     .andExpect(MockMvcResultMatchers.jsonPath("$.email").value(user2.getEmail()))
@@ -267,10 +633,10 @@ public class UserTestIT {
         @BeforeEach
         void setup(){
             UserRole userRole1 = new UserRole(null, Roles.CUSTOMER.name(), null, null);
-            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, List.of(userRole1));
+            user1 =new User(null,"User1","user1@gmail.com","encrypted_password",null,null, null, List.of(userRole1));
             userRole1.setUser(user1);
             UserRole userRole2 = new UserRole(null, Roles.OWNER.name(), null, null);
-            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, List.of(userRole2));
+            user2 =new User(null,"User2","user2@gmail.com","encrypted_password",null,null, null, List.of(userRole2));
             userRole2.setUser(user2);
 
             userRepository.saveAll(List.of(user1,user2));
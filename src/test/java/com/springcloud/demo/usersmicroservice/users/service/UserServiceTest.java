@@ -4,14 +4,33 @@ import com.springcloud.demo.usersmicroservice.dto.SimpleResponseDTO;
 import com.springcloud.demo.usersmicroservice.exceptions.BadRequestException;
 import com.springcloud.demo.usersmicroservice.exceptions.ForbiddenException;
 import com.springcloud.demo.usersmicroservice.exceptions.NotFoundException;
+import com.springcloud.demo.usersmicroservice.exceptions.PreconditionFailedException;
+import com.springcloud.demo.usersmicroservice.exceptions.ServiceUnavailableException;
+import com.springcloud.demo.usersmicroservice.monitoring.ServiceMetrics;
+import com.springcloud.demo.usersmicroservice.password.PasswordHasher;
 import com.springcloud.demo.usersmicroservice.userroles.model.Roles;
 import com.springcloud.demo.usersmicroservice.userroles.model.UserRole;
+import com.springcloud.demo.usersmicroservice.userroles.projection.UserRoleView;
+import com.springcloud.demo.usersmicroservice.userroles.repository.UserRoleRepository;
+import com.springcloud.demo.usersmicroservice.users.cache.SingleFlight;
+import com.springcloud.demo.usersmicroservice.users.cache.SingleFlightProperties;
+import com.springcloud.demo.usersmicroservice.users.cache.UserAuthCache;
+import com.springcloud.demo.usersmicroservice.users.cache.UserAuthCacheProperties;
+import com.springcloud.demo.usersmicroservice.users.cache.UserJsonCache;
+import com.springcloud.demo.usersmicroservice.users.cache.UserJsonCacheProperties;
 import com.springcloud.demo.usersmicroservice.users.dto.CreateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UpdateUserDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UserFiltersDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserPageDTO;
+import com.springcloud.demo.usersmicroservice.users.dto.UserAuthResponseDTO;
 import com.springcloud.demo.usersmicroservice.users.dto.UserResponseDTO;
+import com.springcloud.demo.usersmicroservice.users.event.UserChangedEvent;
 import com.springcloud.demo.usersmicroservice.users.model.User;
+import com.springcloud.demo.usersmicroservice.users.pagination.UserCursor;
+import com.springcloud.demo.usersmicroservice.users.projection.UserView;
+import com.springcloud.demo.usersmicroservice.users.projection.UserWithRoleView;
 import com.springcloud.demo.usersmicroservice.users.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -23,26 +42,52 @@ import static org.mockito.BDDMockito.*;
 
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.domain.SliceImpl;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 
 @ExtendWith(MockitoExtension.class)
 class UserServiceTest {
 
     @Mock
-    PasswordEncoder passwordEncoder;
+    PasswordHasher passwordHasher;
 
     @Mock
     UserRepository userRepository;
 
+    @Mock
+    UserRoleRepository userRoleRepository;
+
+    @Mock
+    UserAuthCache userAuthCache;
+
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    ServiceMetrics serviceMetrics = new ServiceMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    SingleFlight<UUID, Optional<User>> userByIdSingleFlight = new SingleFlight<>("users.by.id", new SingleFlightProperties(), new SimpleMeterRegistry());
+
+    @Spy
+    UserJsonCache userJsonCache = new UserJsonCache(new UserJsonCacheProperties(), new UserAuthCacheProperties(), Jackson2ObjectMapperBuilder.json().build(), new SimpleMeterRegistry());
+
     @InjectMocks
     UserService userService;
 
@@ -54,15 +99,15 @@ class UserServiceTest {
         @Test
         void createUserWithDefaultRole() {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", null);
-            UserRole userRoleCreated = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            User userSaved = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).password(encryptedPassword).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserWithRoleView userCreated = new UserWithRoleView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), createUserDTO.getName(), createUserDTO.getEmail(), encryptedPassword, LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.CUSTOMER.name(), LocalDateTime.now());
 
-            given(userRepository.save(any(User.class))).willReturn(userSaved);
-            given(passwordEncoder.encode(anyString())).willReturn(encryptedPassword);
+            given(userRepository.insertWithRole(any(User.class), anyString())).willReturn(List.of(userCreated));
+            given(passwordHasher.encode(anyString())).willReturn(CompletableFuture.completedFuture(encryptedPassword));
 
-            UserResponseDTO response = userService.create(createUserDTO);
+            UserResponseDTO response = userService.create(createUserDTO).join();
 
-            verify(userRepository).save(argThat(user -> user.getPassword().equals(encryptedPassword)));
+            verify(userRepository).insertWithRole(argThat(user -> user.getPassword().equals(encryptedPassword)), eq(Roles.CUSTOMER.name()));
+            verify(userRepository, never()).findViewByEmailIgnoreCase(any());
 
             assertThat(response.getId()).isOfAnyClassIn(UUID.class);
             assertThat(response.getCreatedAt()).isInstanceOf(LocalDateTime.class);
@@ -76,17 +121,15 @@ class UserServiceTest {
         @Test
         void createUserWithDefinedRole() {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", "OWNER");
-            UserRole userRoleCreated = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.OWNER.name()).createdAt(LocalDateTime.now()).build();
-            User userSaved = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).password(encryptedPassword).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserWithRoleView userCreated = new UserWithRoleView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), createUserDTO.getName(), createUserDTO.getEmail(), encryptedPassword, LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.OWNER.name(), LocalDateTime.now());
 
-            given(userRepository.save(any(User.class))).willReturn(userSaved);
-            given(passwordEncoder.encode(anyString())).willReturn(encryptedPassword);
+            given(userRepository.insertWithRole(any(User.class), anyString())).willReturn(List.of(userCreated));
+            given(passwordHasher.encode(anyString())).willReturn(CompletableFuture.completedFuture(encryptedPassword));
 
-            UserResponseDTO response = userService.create(createUserDTO);
+            UserResponseDTO response = userService.create(createUserDTO).join();
 
-            verify(passwordEncoder, times(1)).encode(anyString());
-            verify(userRepository).save(argThat(user -> user.getPassword().equals(encryptedPassword)));
-            verify(userRepository).save(argThat(user -> user.getRoles().getFirst().getRole().equals(createUserDTO.getRole())));
+            verify(passwordHasher, times(1)).encode(anyString());
+            verify(userRepository).insertWithRole(argThat(user -> user.getPassword().equals(encryptedPassword)), eq(createUserDTO.getRole()));
 
             assertThat(response.getId()).isOfAnyClassIn(UUID.class);
             assertThat(response.getCreatedAt()).isInstanceOf(LocalDateTime.class);
@@ -100,45 +143,73 @@ class UserServiceTest {
         @Test
         void errorWhenNotExistRole() {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", "OTHER_ROLE");
-            given(passwordEncoder.encode(anyString())).willReturn(encryptedPassword);
 
             BadRequestException e = Assertions.assertThrows(BadRequestException.class, ()-> {
                 userService.create(createUserDTO);
             });
 
-            verify(passwordEncoder, times(1)).encode(anyString());
-            verify(userRepository,never()).save(any(User.class));
+            verify(passwordHasher, never()).encode(anyString());
+            verify(userRepository,never()).insertWithRole(any(User.class), anyString());
             assertThat(e.getMessage()).contains("Role not valid");
         }
 
         @Test
         void errorWhenAlreadyExistUserWithSameEmailAndSameRole() {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", null);
-            UserRole userRoleCreated = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            User userSaved = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).password(encryptedPassword).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
-
-            given(userRepository.findByEmail(any())).willReturn(Optional.ofNullable(userSaved));
+            UserWithRoleView userExisting = new UserWithRoleView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), createUserDTO.getName(), "Gonzalo@gmail.com", encryptedPassword, LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.CUSTOMER.name(), LocalDateTime.now());
 
-            ForbiddenException e = Assertions.assertThrows(ForbiddenException.class, () -> {
-                userService.create(createUserDTO);
-            });
+            given(passwordHasher.encode(anyString())).willReturn(CompletableFuture.completedFuture(encryptedPassword));
+            given(userRepository.insertWithRole(any(User.class), anyString())).willReturn(List.of());
+            given(userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail())).willReturn(List.of(userExisting));
 
-            assertThat(e.getMessage()).contains("Already exist user with same email.");
+            assertThatThrownBy(() -> userService.create(createUserDTO).join())
+                    .hasCauseInstanceOf(ForbiddenException.class)
+                    .cause()
+                    .hasMessage("Already exist user with same email.");
         }
 
         @Test
         void errorWhenAlreadyExistUserWithSameEmailButOtherRole() {
             CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", "OWNER");
-            UserRole userRoleCreated = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            User userSaved = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name(createUserDTO.getName()).email(createUserDTO.getEmail()).password(encryptedPassword).roles(List.of(userRoleCreated)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserWithRoleView userExisting = new UserWithRoleView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), createUserDTO.getName(), createUserDTO.getEmail(), encryptedPassword, LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.CUSTOMER.name(), LocalDateTime.now());
 
-            given(userRepository.findByEmail(any())).willReturn(Optional.ofNullable(userSaved));
+            given(passwordHasher.encode(anyString())).willReturn(CompletableFuture.completedFuture(encryptedPassword));
+            given(userRepository.insertWithRole(any(User.class), anyString())).willReturn(List.of());
+            given(userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail())).willReturn(List.of(userExisting));
 
-            ForbiddenException e = Assertions.assertThrows(ForbiddenException.class, () -> {
+            assertThatThrownBy(() -> userService.create(createUserDTO).join())
+                    .hasCauseInstanceOf(ForbiddenException.class)
+                    .cause()
+                    .hasMessage("Already exist user with same email. To add new role try update the user");
+        }
+
+        @Test
+        void errorBeforeHashingWhenEmailExists() {
+            CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "Gonzalo@gmail.com", "abcd1234", null);
+            UserWithRoleView userExisting = new UserWithRoleView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), createUserDTO.getName(), "gonzalo@gmail.com", encryptedPassword, LocalDateTime.now(), LocalDateTime.now(), 0L, UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.CUSTOMER.name(), LocalDateTime.now());
+
+            given(userRepository.existsByEmailIgnoreCase(createUserDTO.getEmail())).willReturn(true);
+            given(userRepository.findViewByEmailIgnoreCase(createUserDTO.getEmail())).willReturn(List.of(userExisting));
+
+            assertThatThrownBy(() -> userService.create(createUserDTO).join())
+                    .hasCauseInstanceOf(ForbiddenException.class)
+                    .cause()
+                    .hasMessage("Already exist user with same email.");
+
+            verify(passwordHasher, never()).encode(anyString());
+            verify(userRepository, never()).insertWithRole(any(User.class), anyString());
+        }
+
+        @Test
+        void errorWhenPasswordHasherSaturated() {
+            CreateUserDTO createUserDTO = new CreateUserDTO("Gonza", "gonzalo@gmail.com", "abcd1234", null);
+            given(passwordHasher.encode(anyString())).willThrow(new ServiceUnavailableException("Too many password requests in progress, try again later", Duration.ofSeconds(1)));
+
+            Assertions.assertThrows(ServiceUnavailableException.class, () -> {
                 userService.create(createUserDTO);
             });
 
-            assertThat(e.getMessage()).contains("Already exist user with same email. To add new role try update the user");
+            verify(userRepository, never()).insertWithRole(any(User.class), anyString());
         }
 
     }
@@ -146,53 +217,55 @@ class UserServiceTest {
     @Nested
     class FindAll {
 
-        UserRole role;
-        User user;
+        UserRoleView role;
+        UserView user;
 
         @BeforeEach
         void setup() {
-            role = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            user = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            user = new UserView(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"), "User1", "user1@gmail.com", LocalDateTime.now(), LocalDateTime.now());
+            role = new UserRoleView(user.id(), UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25"), Roles.CUSTOMER.name(), LocalDateTime.now());
         }
 
         @Test
         void findAll() {
-            given(userRepository.findAll(any(Pageable.class))).willReturn(new PageImpl<User>(List.of(user)));
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
 
-            List<UserResponseDTO> response = userService.findAll(new UserFiltersDTO(null, null, null));
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, null, null, null));
 
             verify(userRepository, times(1))
-                    .findAll(argThat((Pageable pageable) -> pageable.getPageNumber() == 0 && pageable.getPageSize() == 20));
+                    .findAllBy(argThat((Pageable pageable) -> pageable.getPageNumber() == 0 && pageable.getPageSize() == 20));
             verify(userRepository, never())
                     .findBySearchTerm(any(), any());
-            assertThat(response.size()).isEqualTo(1);
+            verify(userRepository, never()).useCustomPlans();
+            assertThat(response.getUsers().size()).isEqualTo(1);
         }
 
         @Test
         void findAllWithCustomPagination() {
-            UserFiltersDTO userFiltersDTO = new UserFiltersDTO(2, 15, null);
-            given(userRepository.findAll(any(Pageable.class))).willReturn(new PageImpl<User>(List.of(user)));
+            UserFiltersDTO userFiltersDTO = new UserFiltersDTO(2, 15, null, null, null);
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
 
-            List<UserResponseDTO> response = userService.findAll(userFiltersDTO);
+            UserPageDTO response = userService.findAll(userFiltersDTO);
 
             verify(userRepository, times(1))
-                    .findAll(argThat((Pageable pageable) ->
+                    .findAllBy(argThat((Pageable pageable) ->
                             pageable.getPageNumber() == userFiltersDTO.getPage() - 1
                                     && pageable.getPageSize() == userFiltersDTO.getLimit())
                     );
             verify(userRepository, never())
                     .findBySearchTerm(any(), any());
-            assertThat(response.size()).isEqualTo(1);
+            assertThat(response.getUsers().size()).isEqualTo(1);
         }
 
         @Test
         void findAllWithCustomPaginationAndTermToSearch() {
-            UserFiltersDTO userFiltersDTO = new UserFiltersDTO(2, 15, "user");
-            given(userRepository.findBySearchTerm(anyString(), any(Pageable.class))).willReturn(new PageImpl<User>(List.of(user)));
+            UserFiltersDTO userFiltersDTO = new UserFiltersDTO(2, 15, "user", null, null);
+            given(userRepository.findBySearchTerm(anyString(), any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
 
-            List<UserResponseDTO> response = userService.findAll(userFiltersDTO);
+            UserPageDTO response = userService.findAll(userFiltersDTO);
 
-            verify(userRepository, never()).findAll((Pageable) any());
+            verify(userRepository).useCustomPlans();
+            verify(userRepository, never()).findAllBy(any());
             verify(userRepository, times(1))
                     .findBySearchTerm(argThat(term ->
                                     term.equals(userFiltersDTO.getQ())),
@@ -200,44 +273,258 @@ class UserServiceTest {
                                     pageable.getPageNumber() == userFiltersDTO.getPage() - 1 &&
                                             pageable.getPageSize() == userFiltersDTO.getLimit())
                     );
-            assertThat(response.size()).isEqualTo(1);
+            assertThat(response.getUsers().size()).isEqualTo(1);
+        }
+        @Test
+        void findAllSortedByCreationDate() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user), PageRequest.of(0, 1), true));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, 1, null, null, null));
+
+            verify(userRepository).findAllBy(argThat((Pageable pageable) -> pageable.getSort().equals(UserCursor.SORT)));
+            assertThat(UserCursor.decode(response.getNextCursor())).isEqualTo(UserCursor.from(user));
+        }
+
+        @Test
+        void notReturnCursorOnFullLastPage() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user), PageRequest.of(0, 1), false));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, 1, null, null, null));
+
+            assertThat(response.getUsers()).hasSize(1);
+            assertThat(response.getNextCursor()).isNull();
+        }
+
+        @Test
+        void notReturnCursorOnLastPage() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, 2, null, null, null));
+
+            assertThat(response.getNextCursor()).isNull();
+        }
+
+        @Test
+        void findAllAfterCursor() {
+            UserCursor cursor = new UserCursor(LocalDateTime.now(), UUID.randomUUID());
+            given(userRepository.findAllAfter(any(), any(), any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(5000, 15, null, cursor.encode(), null));
+
+            verify(userRepository, never()).findAllBy(any(Pageable.class));
+            verify(userRepository).findAllAfter(
+                    argThat(createdAt -> createdAt.equals(cursor.createdAt())),
+                    argThat(id -> id.equals(cursor.id())),
+                    argThat((Pageable pageable) -> pageable.getPageNumber() == 0 && pageable.getPageSize() == 15 && pageable.getSort().equals(UserCursor.SORT))
+            );
+            assertThat(response.getUsers().size()).isEqualTo(1);
+        }
+
+        @Test
+        void returnCursorAfterCursorOnlyWhenNextRowExists() {
+            UserCursor cursor = new UserCursor(LocalDateTime.now(), UUID.randomUUID());
+            given(userRepository.findAllAfter(any(), any(), any(Pageable.class)))
+                    .willReturn(new SliceImpl<UserView>(List.of(user), PageRequest.of(0, 1), true))
+                    .willReturn(new SliceImpl<UserView>(List.of(user), PageRequest.of(0, 1), false));
+
+            UserPageDTO next = userService.findAll(new UserFiltersDTO(null, 1, null, cursor.encode(), null));
+            UserPageDTO last = userService.findAll(new UserFiltersDTO(null, 1, null, cursor.encode(), null));
+
+            assertThat(UserCursor.decode(next.getNextCursor())).isEqualTo(UserCursor.from(user));
+            assertThat(last.getUsers()).hasSize(1);
+            assertThat(last.getNextCursor()).isNull();
+        }
+
+        @Test
+        void findAllWithTermToSearchAfterCursor() {
+            UserCursor cursor = new UserCursor(LocalDateTime.now(), UUID.randomUUID());
+            given(userRepository.findBySearchTermAfter(any(), any(), anyString(), any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, 15, "user", cursor.encode(), null));
+
+            verify(userRepository, never()).findBySearchTerm(any(), any());
+            verify(userRepository).findBySearchTermAfter(any(), any(), argThat(term -> term.equals("user")), any(Pageable.class));
+            assertThat(response.getUsers().size()).isEqualTo(1);
+        }
+
+        @Test
+        void findRolesOfWholePageInOneQuery() {
+            UserView user2 = new UserView(UUID.randomUUID(), "User2", "user2@gmail.com", LocalDateTime.now(), LocalDateTime.now());
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user, user2)));
+            given(userRoleRepository.findViewsByUserIdIn(anyCollection())).willReturn(List.of(role));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, null, null, null));
+
+            verify(userRoleRepository, times(1)).findViewsByUserIdIn(argThat(ids -> ids.containsAll(List.of(user.id(), user2.id()))));
+            assertThat(response.getUsers().get(0).getRoles()).singleElement().satisfies(r -> assertThat(r.getId()).isEqualTo(role.id()));
+            assertThat(response.getUsers().get(1).getRoles()).isEmpty();
+        }
+
+        @Test
+        void notFindRolesWhenPageEmpty() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of()));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, null, null, null));
+
+            verify(userRoleRepository, never()).findViewsByUserIdIn(any());
+            assertThat(response.getUsers()).isEmpty();
+        }
+
+        @Test
+        void notCountWhenTotalNotRequested() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, null, null, null));
+
+            verify(userRepository, never()).count();
+            verify(userRepository, never()).estimateCount();
+            assertThat(response.getTotal()).isNull();
+        }
+
+        @Test
+        void findAllWithEstimatedTotal() {
+            given(userRepository.findAllBy(any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+            given(userRepository.estimateCount()).willReturn(1000L);
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, null, null, true));
+
+            verify(userRepository, never()).countBySearchTerm(any());
+            assertThat(response.getTotal()).isEqualTo(1000L);
+        }
+
+        @Test
+        void findAllWithTermToSearchAndTotal() {
+            given(userRepository.findBySearchTerm(anyString(), any(Pageable.class))).willReturn(new SliceImpl<UserView>(List.of(user)));
+            given(userRepository.countBySearchTerm("user")).willReturn(1L);
+
+            UserPageDTO response = userService.findAll(new UserFiltersDTO(null, null, "user", null, true));
+
+            verify(userRepository, never()).estimateCount();
+            assertThat(response.getTotal()).isEqualTo(1L);
+        }
+
+        @Test
+        void errorWhenCursorNotValid() {
+            BadRequestException e = Assertions.assertThrows(BadRequestException.class, () -> {
+                userService.findAll(new UserFiltersDTO(null, null, null, "not-a-cursor", null));
+            });
+
+            verify(userRepository, never()).findAllAfter(any(), any(), any());
+            assertThat(e.getMessage()).contains("Cursor not valid");
         }
     }
 
     @Nested
     class FindById {
-        UserRole role;
         User user;
 
         @BeforeEach
         void setup() {
-            role = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            user = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            UserRole role = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
+            user = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(2L).build();
         }
 
         @Test
         void findById() {
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(user));
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
 
             UserResponseDTO response = userService.findById("d0dd04ab-a40a-48a1-877e-8833e66342fb");
 
-            verify(userRepository, times(1)).findById(argThat(uuid -> uuid.toString().equals("d0dd04ab-a40a-48a1-877e-8833e66342fb")));
+            verify(userRepository, times(1)).findCachedById(argThat(uuid -> uuid.toString().equals("d0dd04ab-a40a-48a1-877e-8833e66342fb")));
+            verify(userRepository, never()).findById(any());
             assertThat(response.getId()).isEqualTo(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb"));
+            assertThat(response.getRoles()).singleElement().satisfies(role -> assertThat(role.getRole()).isEqualTo(Roles.CUSTOMER.name()));
+        }
+
+        @Test
+        void findByIdWithoutRoles() {
+            user.setRoles(List.of());
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+
+            UserResponseDTO response = userService.findById("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+
+            assertThat(response.getRoles()).isEmpty();
+        }
+
+        @Test
+        void findJsonByIdEncodedOncePerVersion() {
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+
+            UserJsonCache.Json first = userService.findJsonById("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+            UserJsonCache.Json second = userService.findJsonById("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+            user.setVersion(3L);
+            user.setName("User2");
+            UserJsonCache.Json changed = userService.findJsonById("d0dd04ab-a40a-48a1-877e-8833e66342fb");
+
+            assertThat(first.version()).isEqualTo(2L);
+            assertThat(new String(first.bytes(), StandardCharsets.UTF_8)).contains("\"name\":\"User1\"", "\"role\":\"CUSTOMER\"").doesNotContain("password", "version");
+            assertThat(second.bytes()).isSameAs(first.bytes());
+            assertThat(changed.version()).isEqualTo(3L);
+            assertThat(new String(changed.bytes(), StandardCharsets.UTF_8)).contains("\"name\":\"User2\"");
+        }
+
+        @Test
+        void findVersion() {
+            given(userRepository.findCachedVersionById(any(UUID.class))).willReturn(Optional.of(2L));
+
+            assertThat(userService.findVersion("d0dd04ab-a40a-48a1-877e-8833e66342fb")).isEqualTo(2L);
+            verify(userRepository, never()).findCachedById(any());
         }
 
         @Test
         void errorWhenNotExistUserWithId() {
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.empty());
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.empty());
 
             NotFoundException e = Assertions.assertThrows(NotFoundException.class, () -> {
                 userService.findById("d0dd04ab-a40a-48a1-877e-8833e66342fa");
             });
 
-            verify(userRepository, times(1)).findById(argThat(uuid -> uuid.toString().equals("d0dd04ab-a40a-48a1-877e-8833e66342fa")));
+            verify(userRepository, times(1)).findCachedById(argThat(uuid -> uuid.toString().equals("d0dd04ab-a40a-48a1-877e-8833e66342fa")));
             assertThat(e.getMessage()).contains("Not found user with id");
         }
     }
 
+    @Nested
+    class FindByEmailToAuth {
+
+        @Test
+        void findByEmailToAuth() {
+            UserAuthResponseDTO userCached = UserAuthResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).email("user1@gmail.com").password(encryptedPassword).roles(List.of()).build();
+
+            given(userAuthCache.get(anyString())).willReturn(Optional.of(userCached));
+
+            UserAuthResponseDTO response = userService.findByEmailToAuth("user1@gmail.com");
+
+            verify(userAuthCache).get("user1@gmail.com");
+            verify(userRepository, never()).findViewByEmailIgnoreCase(any());
+            assertThat(response.getId()).isEqualTo(userCached.getId());
+        }
+
+        @Test
+        void findJsonByEmailToAuthEncodedOncePerCachedUser() {
+            UserAuthResponseDTO userCached = UserAuthResponseDTO.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).email("user1@gmail.com").password(encryptedPassword).roles(List.of()).build();
+
+            given(userAuthCache.get(anyString())).willReturn(Optional.of(userCached));
+
+            byte[] first = userService.findJsonByEmailToAuth("user1@gmail.com");
+            byte[] second = userService.findJsonByEmailToAuth("user1@gmail.com");
+
+            assertThat(new String(first, StandardCharsets.UTF_8)).contains("\"password\":\"" + encryptedPassword + "\"");
+            assertThat(second).isSameAs(first);
+        }
+
+        @Test
+        void errorWhenNotExistUserWithEmail() {
+            given(userAuthCache.get(anyString())).willReturn(Optional.empty());
+
+            NotFoundException e = Assertions.assertThrows(NotFoundException.class, () -> {
+                userService.findByEmailToAuth("user1@gmail.com");
+            });
+
+            assertThat(e.getMessage()).contains("Not found user with email");
+        }
+    }
+
     @Nested
     class Update {
         UserRole role;
@@ -246,7 +533,7 @@ class UserServiceTest {
         @BeforeEach
         void setup() {
             role = UserRole.builder().id(UUID.fromString("a399bded-044d-4ffc-b2e7-70cefb21ed25")).role(Roles.CUSTOMER.name()).createdAt(LocalDateTime.now()).build();
-            user = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
+            user = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(3L).build();
         }
 
         @Test
@@ -255,18 +542,35 @@ class UserServiceTest {
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, "nuevo_mail@gmail.com", null);
             User updatedUser = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("nuevo_mail@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(user));
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
             given(userRepository.save(any(User.class))).willReturn(updatedUser);
 
-            UserResponseDTO response = userService.update(updateUserDTO, idUser);
+            UserResponseDTO response = userService.update(updateUserDTO, idUser, null).join();
 
-            verify(userRepository).findById(argThat(uuid -> uuid.toString().equals(idUser)));
+            verify(userRepository).findCachedById(argThat(uuid -> uuid.toString().equals(idUser)));
             verify(userRepository).save(argThat(u -> u.getEmail().equals("nuevo_mail@gmail.com")));
+            verify(passwordHasher, never()).encode(anyString());
+            verify(eventPublisher).publishEvent(new UserChangedEvent(UUID.fromString(idUser)));
             assertThat(response.getEmail()).isEqualTo(updateUserDTO.getEmail());
             assertThat(response.getId()).isEqualTo(UUID.fromString(idUser));
             assertThat(response.getName()).isEqualTo("User1");
         }
 
+        @Test
+        void errorWhenUpdateToEmailOfOtherUser() {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, "user2@gmail.com", null);
+
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+            given(userRepository.save(any(User.class))).willThrow(new DataIntegrityViolationException("idx_users_email_lower"));
+
+            ForbiddenException e = Assertions.assertThrows(ForbiddenException.class, () -> {
+                userService.update(updateUserDTO, user.getId().toString(), null);
+            });
+
+            verify(eventPublisher, never()).publishEvent(any());
+            assertThat(e.getMessage()).contains("Already exist user with same email.");
+        }
+
         @Test
         void updatePassword() {
             String idUser = user.getId().toString();
@@ -274,30 +578,87 @@ class UserServiceTest {
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, null, "nueva_contraseña");
             User updatedUser = User.builder().id(UUID.fromString("d0dd04ab-a40a-48a1-877e-8833e66342fb")).name("User1").email("nuevo_mail@gmail.com").password(newPasswordEncrypted).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).build();
 
-            given(passwordEncoder.encode(anyString())).willReturn(newPasswordEncrypted);
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(user));
+            given(passwordHasher.encode(anyString())).willReturn(CompletableFuture.completedFuture(newPasswordEncrypted));
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
             given(userRepository.save(any(User.class))).willReturn(updatedUser);
 
-            UserResponseDTO response = userService.update(updateUserDTO, idUser);
+            UserResponseDTO response = userService.update(updateUserDTO, idUser, null).join();
 
-            verify(userRepository).findById(argThat(uuid -> uuid.toString().equals(idUser)));
+            verify(userRepository).findCachedById(argThat(uuid -> uuid.toString().equals(idUser)));
             verify(userRepository).save(argThat(u -> u.getPassword().equals(newPasswordEncrypted)));
+            verify(eventPublisher).publishEvent(new UserChangedEvent(UUID.fromString(idUser)));
             assertThat(response.getId()).isEqualTo(UUID.fromString(idUser));
         }
 
+        @Test
+        void updateWhenIfMatchHasCurrentVersion() {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("Other name", null, null);
+
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+            given(userRepository.save(any(User.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+            UserResponseDTO response = userService.update(updateUserDTO, user.getId().toString(), 3L).join();
+
+            assertThat(response.getName()).isEqualTo("Other name");
+        }
+
+        @Test
+        void errorWhenIfMatchHasOldVersion() {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("Other name", null, null);
+
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+
+            PreconditionFailedException e = Assertions.assertThrows(PreconditionFailedException.class, () -> {
+                userService.update(updateUserDTO, user.getId().toString(), 2L);
+            });
+
+            assertThat(e.getMessage()).contains("current version is 3");
+            verify(userRepository, never()).save(any(User.class));
+        }
+
+        @Test
+        void errorWhenUserChangedBeforeSaveWithIfMatch() {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("Other name", null, null);
+
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user));
+            given(userRepository.save(any(User.class))).willThrow(new ObjectOptimisticLockingFailureException(User.class, user.getId()));
+
+            Assertions.assertThrows(PreconditionFailedException.class, () -> {
+                userService.update(updateUserDTO, user.getId().toString(), 3L);
+            });
+
+            verify(eventPublisher, never()).publishEvent(any());
+        }
+
+        @Test
+        void retryWhenUserChangedBeforeSaveWithoutIfMatch() {
+            UpdateUserDTO updateUserDTO = new UpdateUserDTO("Other name", null, null);
+            User currentUser = User.builder().id(user.getId()).name("User1").email("user1@gmail.com").password(encryptedPassword).roles(List.of(role)).createdAt(LocalDateTime.now()).lastUpdated(LocalDateTime.now()).version(4L).build();
+
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.of(user), Optional.of(currentUser));
+            given(userRepository.save(any(User.class)))
+                    .willThrow(new ObjectOptimisticLockingFailureException(User.class, user.getId()))
+                    .willAnswer(invocation -> invocation.getArgument(0));
+
+            UserResponseDTO response = userService.update(updateUserDTO, user.getId().toString(), null).join();
+
+            verify(userRepository).save(argThat(u -> u.getVersion() == 4L && u.getName().equals("Other name")));
+            assertThat(response.getVersion()).isEqualTo(4L);
+        }
+
         @Test
         void errorWhenNotExistUserWithId() {
             String idUser = "d0dd04ab-a40a-48a1-877e-8833e66342fa";
             UpdateUserDTO updateUserDTO = new UpdateUserDTO(null, "nuevo_mail@gmail.com", null);
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.empty());
+            given(userRepository.findCachedById(any(UUID.class))).willReturn(Optional.empty());
 
             NotFoundException e = Assertions.assertThrows(NotFoundException.class, () -> {
-                UserResponseDTO response = userService.update(updateUserDTO, idUser);
+                userService.update(updateUserDTO, idUser, null);
             });
 
             assertThat(e.getMessage()).contains("Not found user with id");
-            verify(userRepository).findById(argThat(uuid -> uuid.toString().equals(idUser)));
+            verify(userRepository).findCachedById(argThat(uuid -> uuid.toString().equals(idUser)));
             verify(userRepository, never()).save(any(User.class));
         }
     }
@@ -318,14 +679,13 @@ class UserServiceTest {
         void delete() {
             String idUser = user.getId().toString();
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.of(user));
-            willDoNothing().given(userRepository).delete(any(User.class));
+            given(userRepository.deleteUserById(any(UUID.class))).willReturn(1);
 
             SimpleResponseDTO response = userService.delete(idUser);
 
-            verify(userRepository).findById(argThat(id -> id.equals(UUID.fromString(idUser))));
-            verify(userRepository).delete(any(User.class));
-            verify(userRepository).delete(argThat(user -> user.getId().equals(UUID.fromString(idUser))));
+            verify(userRepository).deleteUserById(UUID.fromString(idUser));
+            verify(userRepository, never()).findCachedById(any());
+            verify(eventPublisher).publishEvent(new UserChangedEvent(UUID.fromString(idUser)));
             assertThat(response.isOk()).isTrue();
 
         }
@@ -334,14 +694,14 @@ class UserServiceTest {
         void errorWhenNotExistUserWithId() {
             String idUser = user.getId().toString();
 
-            given(userRepository.findById(any(UUID.class))).willReturn(Optional.empty());
+            given(userRepository.deleteUserById(any(UUID.class))).willReturn(0);
 
             NotFoundException e = Assertions.assertThrows(NotFoundException.class, ()-> {
                 userService.delete(idUser);
             });
 
-            verify(userRepository).findById(argThat(id -> id.equals(UUID.fromString(idUser))));
-            verify(userRepository, never()).delete(any());
+            verify(userRepository).deleteUserById(UUID.fromString(idUser));
+            verify(eventPublisher, never()).publishEvent(any());
             assertThat(e.getMessage()).contains("Not found user with id");
 
         }